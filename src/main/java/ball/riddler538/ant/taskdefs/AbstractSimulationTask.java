@@ -18,26 +18,1577 @@ package ball.riddler538.ant.taskdefs;
  * limitations under the License.
  * ##########################################################################
  */
+import ball.swing.table.SimpleTableModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import lombok.ToString;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.IntrospectionHelper;
+import org.apache.tools.ant.Project;
 
 import static lombok.AccessLevel.PROTECTED;
 
 /**
  * Abstract base {@link.uri http://ant.apache.org/ Ant}
  * {@link org.apache.tools.ant.Task} for simulations.
+ * <p>
+ * The {@code count} trials are partitioned into fixed-size chunks which
+ * are run on a {@link ForkJoinPool} of {@code threads} workers.  Each chunk
+ * folds its trials into a private {@link Accumulator} (see
+ * {@link #accumulator()} and {@link #trial(Accumulator,Random)} or, in batches,
+ * {@link #trials(Accumulator,Random,double[],int)}) and the
+ * partial {@link Accumulator}s are merged pair-wise as the chunks are
+ * joined.  The merged {@link Accumulator} is passed to
+ * {@link #report(Accumulator)}.
+ * </p>
+ * <p>
+ * {@link Accumulator}s should fold each trial into running
+ * {@link Statistics} and {@link Histogram}s and discard it so the heap
+ * required is independent of {@code count}.
+ * </p>
+ * <p>
+ * {@link #trial(Accumulator,Random)} returns the trial's contribution to
+ * the task's headline {@link Estimate} (e.g., {@code 1} for a success and
+ * {@code 0} otherwise).  If {@code precision} is specified, the trials are
+ * run in rounds until the {@code confidence} interval half-width of the
+ * {@link Estimate} is no greater than {@code precision} (or {@code count}
+ * trials have been run).  A zero sample variance never satisfies
+ * {@code precision}.
+ * </p>
+ * <p>
+ * If {@code duration} (seconds) is specified, {@code count} is ignored and
+ * as many trials are run as fit in the time budget.  Each round is sized
+ * from the throughput measured so far to take about half the remaining
+ * time so the rounds shrink geometrically as the deadline approaches.
+ * </p>
+ * <p>
+ * Each chunk draws from its own {@code rng} {@link Generator} stream whose
+ * seed is derived (SplitMix64) from {@code seed} and the chunk's index.  Since
+ * the chunk boundaries and the merge order depend only on {@code count}
+ * (and not on {@code threads}), a given {@code seed} reproduces the same
+ * results for any number of {@code threads}.  If no {@code seed} is
+ * specified, one is chosen at random and logged at verbose level.
+ * </p>
+ * <p>
+ * If {@code compare} is {@code true}, the simulation is run (after a
+ * warm-up run) with each {@link Generator} in turn and the throughput of
+ * each is reported instead of the task's results.  A comparison cannot be
+ * combined with {@code checkpoint}, {@code resume}, or {@code shards}.
+ * </p>
+ * <p>
+ * If {@code checkpoint} is specified, the trials are run in rounds of
+ * about {@code interval} seconds and a {@link Snapshot} of the merged
+ * {@link Result} is written to the {@code checkpoint} {@link File} after
+ * each round.  With {@code resume="true"}, the simulation continues from
+ * the {@link Snapshot} (with the same {@code seed} and {@code rng}) so an
+ * interrupted run may be restarted or a completed run extended by
+ * increasing {@code count}.  The task's other attributes must be the same
+ * as when the {@link Snapshot} was written.
+ * </p>
+ * <p>
+ * A simulation may be split across {@code shards} independent JVMs (each
+ * with the same {@code seed}, {@code count}, and {@code checkpoint} file
+ * per {@code shard}): shard {@code s} runs the chunks whose index is
+ * congruent to {@code s} modulo {@code shards} so the shards' streams are
+ * disjoint and, together, identical to an unsharded run.  The shards'
+ * {@link Snapshot}s are combined with
+ * {@link MergeSimulationResultsTask merge-simulation-results}.
+ * </p>
+ * <p>
+ * Subclasses that can calculate their solution directly override
+ * {@link #exact()} which is called instead of the simulation if
+ * {@code exact="true"}.
+ * </p>
+ * <p>
+ * While the trials are running, the trials completed, throughput,
+ * estimated time remaining, and current {@link Estimate} are logged every
+ * {@code progress} seconds ({@code 0} to disable) and published as a
+ * {@link SimulationMXBean} registered with the platform
+ * {@link javax.management.MBeanServer}.
+ * </p>
+ * <p>
+ * Nested {@link Sweep} elements (e.g.,
+ * {@code <sweep attribute="seats" values="2..1000"/>}) specify a parameter
+ * sweep: the simulation is run for every point of the Cartesian product of
+ * the {@link Sweep}s' values, all on one {@link ForkJoinPool} of
+ * {@code threads} workers (with the same {@code seed}), and the points'
+ * headline {@link Estimate}s are reported in one table.  A sweep cannot be
+ * combined with {@code compare}, {@code checkpoint}, or {@code exact}.
+ * </p>
  *
  * {@ant.task}
  *
+ * @param       <A>             The {@link Accumulator} type.
+ *
  * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
  */
 @NoArgsConstructor(access = PROTECTED)
-public abstract class AbstractSimulationTask extends AbstractTask {
+public abstract class AbstractSimulationTask<A extends AbstractSimulationTask.Accumulator<A>> extends AbstractTask {
+    /**
+     * The number of trials in a chunk.
+     */
+    protected static final int CHUNK = 1 << 13;
+    private static final int ROUND = 16;
+    private static final double NANOS = 1e9;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    @Getter @Setter
+    private long count = 1000000;
+    @Getter @Setter
+    private int threads = Runtime.getRuntime().availableProcessors();
+    @Getter @Setter
+    private double precision = 0;
+    @Getter @Setter
+    private double confidence = 0.95;
+    @Getter @Setter
+    private double duration = 0;
+    @Getter @Setter
+    private Long seed = null;
+    @Getter @Setter
+    private Generator rng = Generator.SPLITTABLE;
+    @Getter @Setter
+    private boolean compare = false;
     @Getter @Setter
-    private int count = 1000000;
+    private File checkpoint = null;
+    @Getter @Setter
+    private double interval = 60;
+    @Getter @Setter
+    private boolean resume = false;
+    @Getter @Setter
+    private int shard = 0;
+    @Getter @Setter
+    private int shards = 1;
+    @Getter @Setter
+    private double progress = 10;
+    @Getter @Setter
+    private boolean exact = false;
+    private List<Sweep> sweeps = new ArrayList<>();
+    private long resumed = 0;
+    private volatile Progress current = null;
+    private ForkJoinPool shared = null;
+
+    public void addConfiguredSweep(Sweep sweep) {
+        if (sweep.getAttribute() == null || sweep.getValues() == null) {
+            throw new BuildException("`sweep' requires `attribute' and `values'");
+        }
+
+        sweeps.add(sweep);
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        super.execute();
+
+        try {
+            if (! sweeps.isEmpty()) {
+                sweep();
+            } else if (isExact()) {
+                exact();
+            } else if (! isCompare()) {
+                long start = System.nanoTime();
+                Result<A> result = simulate();
+                long elapsed = System.nanoTime() - start;
+
+                report(result.getAccumulator());
+
+                if (getPrecision() > 0 || getDuration() > 0 || getCheckpoint() != null) {
+                    report(result.getEstimate(), elapsed);
+                }
+            } else {
+                compare();
+            }
+        } catch (BuildException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            throw new BuildException(throwable);
+        }
+    }
+
+    /**
+     * Method to create a new (empty) {@link Accumulator}.  Called once for
+     * each chunk of trials.
+     *
+     * @return  A new {@link Accumulator}.
+     */
+    protected abstract A accumulator();
+
+    /**
+     * Method to run a single trial and fold the result into the
+     * {@link Accumulator}.  Called concurrently for different chunks so
+     * implementations must not modify shared state.
+     *
+     * @param   accumulator     The chunk's {@link Accumulator}.
+     * @param   random          The chunk's {@link Random}.
+     *
+     * @return  The trial's contribution to the headline {@link Estimate}.
+     */
+    protected abstract double trial(A accumulator, Random random);
+
+    /**
+     * Method to run {@code n} consecutive trials and store each trial's
+     * contribution to the headline {@link Estimate} in {@code values}.
+     * Implementations must draw from {@code random} in the same order as
+     * {@code n} calls to {@link #trial(Accumulator,Random)} so seeded and
+     * resumed runs are reproducible.  The default implementation calls
+     * {@link #trial(Accumulator,Random)} {@code n} times; subclasses may
+     * override to process the trials as a batch.
+     *
+     * @param   accumulator     The chunk's {@link Accumulator}.
+     * @param   random          The chunk's {@link Random}.
+     * @param   values          The array to receive the trials'
+     *                          contributions.
+     * @param   n               The number of trials.
+     */
+    protected void trials(A accumulator, Random random, double[] values, int n) {
+        for (int i = 0; i < n; i += 1) {
+            values[i] = trial(accumulator, random);
+        }
+    }
+
+    /**
+     * Method to report the merged {@link Accumulator}.
+     *
+     * @param   accumulator     The merged {@link Accumulator}.
+     *
+     * @throws  Exception       If the report cannot be generated.
+     */
+    protected abstract void report(A accumulator) throws Exception;
+
+    /**
+     * Method to create a chunk's {@link Random} stream.  The default
+     * implementation returns a new {@code rng} {@link Generator} instance;
+     * subclasses may wrap it (e.g., to supply stratified or low-discrepancy
+     * samples) provided the stream depends only on {@code seed}.
+     *
+     * @param   seed            The chunk's stream seed.
+     *
+     * @return  The {@link Random}.
+     */
+    protected Random random(long seed) { return getRng().newInstance(seed); }
+
+    /**
+     * Method to calculate and report the exact solution (if
+     * {@code exact="true"}) instead of running the simulation.  The default
+     * implementation throws {@link BuildException}.
+     *
+     * @throws  Exception       If the solution cannot be calculated or
+     *                          reported.
+     */
+    protected void exact() throws Exception {
+        throw new BuildException("`exact' is not supported");
+    }
+
+    /**
+     * Method to run the trials on {@code threads} workers.
+     *
+     * @return  The merged {@link Result}.
+     */
+    protected Result<A> simulate() throws IOException, ClassNotFoundException {
+        if (getCount() < 0) {
+            throw new BuildException("`count' must not be negative");
+        }
+
+        if (getThreads() < 1) {
+            throw new BuildException("`threads' must be at least 1");
+        }
+
+        if (getPrecision() < 0) {
+            throw new BuildException("`precision' must not be negative");
+        }
+
+        if (! (0 < getConfidence() && getConfidence() < 1)) {
+            throw new BuildException("`confidence' must be in the range (0, 1)");
+        }
+
+        if (getDuration() < 0) {
+            throw new BuildException("`duration' must not be negative");
+        }
+
+        if (getInterval() <= 0) {
+            throw new BuildException("`interval' must be positive");
+        }
+
+        if (getProgress() < 0) {
+            throw new BuildException("`progress' must not be negative");
+        }
+
+        if (isResume() && getCheckpoint() == null) {
+            throw new BuildException("`resume' requires `checkpoint'");
+        }
+
+        if (! (0 <= getShard() && getShard() < getShards())) {
+            throw new BuildException("`shard' must be in the range [0, `shards')");
+        }
+
+        if (getShards() > 1 && getCheckpoint() == null) {
+            throw new BuildException("`shards' requires `checkpoint'");
+        }
+
+        long seed = (getSeed() != null) ? getSeed() : new SplittableRandom().nextLong();
+        Result<A> result = null;
+        long from = 0;
+
+        if (isResume()) {
+            if (getCheckpoint().exists()) {
+                Snapshot<A> snapshot = Snapshot.read(getCheckpoint());
+
+                if (! snapshot.getTask().equals(toString())) {
+                    throw new BuildException(getCheckpoint()
+                                             + " is a snapshot of " + snapshot.getTask());
+                }
+
+                if (getSeed() != null && getSeed() != snapshot.getSeed()) {
+                    throw new BuildException(getCheckpoint()
+                                             + " was seeded with " + snapshot.getSeed());
+                }
+
+                if (snapshot.getShard() != getShard() || snapshot.getShards() != getShards()) {
+                    throw new BuildException(getCheckpoint()
+                                             + " is shard " + snapshot.getShard()
+                                             + " of " + snapshot.getShards());
+                }
+
+                seed = snapshot.getSeed();
+                setRng(snapshot.getRng());
+                result = snapshot.getResult();
+                from = snapshot.getTrials();
+
+                log("Resuming " + getCheckpoint() + " after " + from + " trials");
+            } else {
+                log(getCheckpoint() + " does not exist");
+            }
+        }
+
+        resumed = from;
+
+        log("seed: " + seed, Project.MSG_VERBOSE);
+
+        long start = System.nanoTime();
+        long deadline = start + (long) (getDuration() * NANOS);
+        long limit = (getDuration() > 0) ? (Long.MAX_VALUE / CHUNK) * CHUNK : limit();
+        double z = Estimate.z(getConfidence());
+
+        current = new Progress(start, (getDuration() > 0) ? deadline : 0, limit, z,
+                               (result != null) ? result.getEstimate() : null);
+
+        ForkJoinPool pool = (shared != null) ? shared : new ForkJoinPool(getThreads());
+        ScheduledExecutorService scheduler = null;
+        ObjectName name = register(current);
+
+        try {
+            if (getProgress() > 0) {
+                long period = (long) (getProgress() * NANOS);
+
+                scheduler =
+                    Executors.newSingleThreadScheduledExecutor(runnable -> {
+                            Thread thread = new Thread(runnable, getClass().getSimpleName() + "-progress");
+
+                            thread.setDaemon(true);
+
+                            return thread;
+                        });
+                scheduler.scheduleAtFixedRate(current, period, period, TimeUnit.NANOSECONDS);
+            }
+
+            long end = from;
+            long next = limit;
+
+            if (getDuration() > 0 || getCheckpoint() != null) {
+                next = from + getThreads() * CHUNK;
+            } else if (getPrecision() > 0) {
+                next = from + ROUND * CHUNK;
+            }
+
+            while (end < limit) {
+                long begin = end;
+
+                end = Math.min(align(Math.max(next, begin + 1)), limit);
+
+                Chunks chunks = new Chunks(seed, begin, end);
+                Result<A> round =
+                    (ForkJoinTask.getPool() == pool) ? chunks.invoke() : pool.invoke(chunks);
+
+                if (result != null) {
+                    result.merge(round);
+                } else {
+                    result = round;
+                }
+
+                if (getCheckpoint() != null) {
+                    new Snapshot<>(getClass().getName(), toString(), getRng(), seed,
+                                   getCount(), getConfidence(),
+                                   getShard(), getShards(), limit(), end, result)
+                        .write(getCheckpoint());
+                }
+
+                Estimate estimate = result.getEstimate();
+
+                /*
+                 * A zero sample variance (e.g., all successes or all
+                 * failures so far) says nothing about the precision.
+                 */
+                if (getPrecision() > 0 && estimate.getVariance() > 0
+                    && estimate.getHalfWidth(z) <= getPrecision()) {
+                    break;
+                }
+
+                long now = System.nanoTime();
+                double rate = ((double) (end - from)) / Math.max(now - start, 1);
+
+                next = limit;
+
+                if (getPrecision() > 0) {
+                    /*
+                     * Run enough trials for the predicted number required
+                     * (unknown if the variance is zero) but no more than
+                     * double the number run so far.
+                     */
+                    double sd = Math.sqrt(estimate.getVariance());
+                    double required =
+                        (sd > 0) ? Math.pow(z * sd / getPrecision(), 2) : Double.POSITIVE_INFINITY;
+
+                    next = Math.min(next, (long) Math.ceil(Math.min(required, 2.0 * end)));
+                }
+
+                if (getDuration() > 0) {
+                    /*
+                     * Size the round from the measured throughput to take
+                     * half of the remaining time.
+                     */
+                    long budget = (long) (rate * (deadline - now) / 2);
+
+                    if (budget < CHUNK) {
+                        break;
+                    }
+
+                    next = Math.min(next, end + budget);
+                }
+
+                if (getCheckpoint() != null) {
+                    next = Math.min(next, end + (long) (rate * getInterval() * NANOS));
+                }
+            }
+
+            if (result == null) {
+                result = new Result<>(accumulator(), new Estimate());
+            }
+
+            return result;
+        } finally {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+
+            if (pool != shared) {
+                pool.shutdown();
+            }
+
+            unregister(name);
+            current = null;
+        }
+    }
+
+    /*
+     * Run every point of the sweeps' grid on one pool: each point is a
+     * clone of this task with the swept attributes set (as Ant would set
+     * them) whose simulate() forks its chunks into the shared pool.
+     */
+    @SuppressWarnings({ "unchecked" })
+    private void sweep() throws Exception {
+        if (isCompare() || getCheckpoint() != null || isExact()) {
+            throw new BuildException("`sweep' cannot be combined with `compare', `checkpoint', or `exact'");
+        }
+
+        if (getThreads() < 1) {
+            throw new BuildException("`threads' must be at least 1");
+        }
+
+        List<List<String>> grid = new ArrayList<>();
+
+        grid.add(new ArrayList<>());
+
+        for (Sweep sweep : sweeps) {
+            List<List<String>> next = new ArrayList<>();
+
+            for (List<String> point : grid) {
+                for (String value : sweep.values()) {
+                    List<String> list = new ArrayList<>(point);
+
+                    list.add(value);
+                    next.add(list);
+                }
+            }
+
+            grid = next;
+        }
+
+        long seed = (getSeed() != null) ? getSeed() : new SplittableRandom().nextLong();
+
+        log("seed: " + seed, Project.MSG_VERBOSE);
+
+        IntrospectionHelper helper = IntrospectionHelper.getHelper(getProject(), getClass());
+        ForkJoinPool pool = new ForkJoinPool(getThreads());
+        List<ForkJoinTask<Result<A>>> tasks = new ArrayList<>();
+        SimpleTableModel model = null;
+
+        try {
+            for (List<String> point : grid) {
+                AbstractSimulationTask<A> task = (AbstractSimulationTask<A>) clone();
+
+                task.sweeps = new ArrayList<>();
+                task.shared = pool;
+                task.setSeed(seed);
+                task.setProgress(0);
+
+                for (int i = 0; i < sweeps.size(); i += 1) {
+                    helper.setAttribute(getProject(), task, sweeps.get(i).getAttribute(), point.get(i));
+                }
+
+                tasks.add(pool.submit(task::simulate));
+            }
+
+            ArrayList<String> headers = new ArrayList<>();
+
+            for (Sweep sweep : sweeps) {
+                headers.add(sweep.getAttribute());
+            }
+
+            headers.add("trials");
+            headers.add("estimate");
+            headers.add((getConfidence() * 100) + "% interval");
+            headers.add("half-width");
+
+            model = new SimpleTableModel(new Object[][] { }, headers.toArray(new String[] { }));
+
+            double z = Estimate.z(getConfidence());
+
+            for (int i = 0; i < grid.size(); i += 1) {
+                Estimate estimate = null;
+
+                try {
+                    estimate = tasks.get(i).get().getEstimate();
+                } catch (ExecutionException exception) {
+                    if (exception.getCause() instanceof BuildException) {
+                        throw (BuildException) exception.getCause();
+                    }
+
+                    throw new BuildException(exception.getCause());
+                }
+
+                double halfWidth = estimate.getHalfWidth(z);
+                ArrayList<Object> row = new ArrayList<>(grid.get(i));
+
+                row.add(estimate.getCount());
+                row.add(estimate.getMean());
+                row.add("[" + (estimate.getMean() - halfWidth)
+                        + ", " + (estimate.getMean() + halfWidth) + "]");
+                row.add(halfWidth);
+
+                model.row(row.toArray());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        log(model);
+    }
+
+    private ObjectName register(SimulationMXBean bean) {
+        ObjectName name = null;
+
+        try {
+            name =
+                new ObjectName(AbstractSimulationTask.class.getPackage().getName()
+                               + ":type=" + getClass().getSimpleName()
+                               + ",id=" + Integer.toHexString(System.identityHashCode(bean)));
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+        } catch (JMException exception) {
+            log("Cannot register MBean: " + exception, Project.MSG_WARN);
+            name = null;
+        }
+
+        return name;
+    }
+
+    private void unregister(ObjectName name) {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException exception) {
+                log("Cannot unregister " + name + ": " + exception, Project.MSG_WARN);
+            }
+        }
+    }
+
+    /*
+     * The number of count trials in this shard's chunks.
+     */
+    private long limit() {
+        long limit = getCount();
+
+        if (getShards() > 1) {
+            long chunks = align(getCount()) / CHUNK;
+            long mine = (chunks > getShard()) ? (chunks - getShard() + getShards() - 1) / getShards() : 0;
+
+            limit = mine * CHUNK;
+
+            if (mine > 0 && getShard() + (mine - 1) * getShards() == chunks - 1) {
+                limit -= align(getCount()) - getCount();
+            }
+        }
+
+        return limit;
+    }
+
+    private long align(long trials) {
+        return ((trials / CHUNK) + ((trials % CHUNK != 0) ? 1 : 0)) * CHUNK;
+    }
+
+    private void compare() throws IOException, ClassNotFoundException {
+        if (getCheckpoint() != null || isResume() || getShards() > 1) {
+            throw new BuildException("`compare' cannot be combined with `checkpoint', `resume', or `shards'");
+        }
+
+        SimpleTableModel model =
+            new SimpleTableModel(new Object[][] { },
+                                 "rng", "trials", "seconds", "trials/second", "estimate");
+        Generator rng = getRng();
+
+        try {
+            for (Generator generator : Generator.values()) {
+                setRng(generator);
+                simulate();
+
+                long start = System.nanoTime();
+                Estimate estimate = simulate().getEstimate();
+                double seconds = ((double) (System.nanoTime() - start)) / NANOS;
+
+                model.row(generator, estimate.getCount(), seconds,
+                          estimate.getCount() / seconds, estimate.getMean());
+            }
+        } finally {
+            setRng(rng);
+        }
+
+        log(model);
+    }
+
+    private void report(Estimate estimate, long elapsed) {
+        double z = Estimate.z(getConfidence());
+        double halfWidth = estimate.getHalfWidth(z);
+        SimpleTableModel model = new SimpleTableModel(new Object[][] { }, 2);
+
+        if (getPrecision() > 0 && (halfWidth > getPrecision() || estimate.getVariance() == 0)) {
+            log("`precision' not achieved in " + estimate.getCount() + " trials");
+        }
+
+        model.row("trials:", estimate.getCount());
+
+        if (elapsed >= 0) {
+            double seconds = ((double) elapsed) / NANOS;
+
+            model
+                .row("seconds:", seconds)
+                .row("trials/second:", (estimate.getCount() - resumed) / seconds);
+        }
+
+        model
+            .row("estimate:", estimate.getMean())
+            .row((getConfidence() * 100) + "% interval:",
+                 "[" + (estimate.getMean() - halfWidth)
+                 + ", " + (estimate.getMean() + halfWidth) + "]")
+            .row("half-width:", halfWidth);
+
+        log();
+        log(model);
+    }
+
+    /**
+     * Method to merge and report shards' {@link Snapshot}s.  The
+     * {@link Snapshot}s must be of the same simulation (task, seed, rng,
+     * count, confidence, and shards) and of different shards.  Missing
+     * shards and shards that did not run their target number of trials
+     * are logged as warnings.
+     *
+     * @param   snapshots       The {@link Snapshot}s to merge.
+     *
+     * @throws  Exception       If the {@link Snapshot}s cannot be merged
+     *                          or reported.
+     */
+    protected void merge(List<Snapshot<A>> snapshots) throws Exception {
+        if (snapshots.isEmpty()) {
+            throw new BuildException("No snapshots specified");
+        }
+
+        snapshots.sort(Comparator.comparingInt(Snapshot::getShard));
+
+        Snapshot<A> first = snapshots.get(0);
+        BitSet shards = new BitSet(first.getShards());
+        Result<A> result = null;
+
+        for (Snapshot<A> snapshot : snapshots) {
+            if (! (snapshot.getTask().equals(first.getTask())
+                   && snapshot.getRng() == first.getRng()
+                   && snapshot.getSeed() == first.getSeed()
+                   && snapshot.getShards() == first.getShards())) {
+                throw new BuildException(snapshot + " is not a shard of " + first);
+            }
+
+            if (snapshot.getCount() != first.getCount()
+                || snapshot.getConfidence() != first.getConfidence()) {
+                throw new BuildException(snapshot + " was not run with the `count' and `confidence' of "
+                                         + first);
+            }
+
+            if (shards.get(snapshot.getShard())) {
+                throw new BuildException("Duplicate shard " + snapshot.getShard());
+            }
+
+            if (snapshot.getTrials() < snapshot.getTarget()) {
+                log("Shard " + snapshot.getShard() + " is incomplete: "
+                    + snapshot.getTrials() + " of " + snapshot.getTarget() + " trials",
+                    Project.MSG_WARN);
+            }
+
+            shards.set(snapshot.getShard());
+
+            if (result != null) {
+                result.merge(snapshot.getResult());
+            } else {
+                result = snapshot.getResult();
+            }
+        }
+
+        if (shards.cardinality() < first.getShards()) {
+            shards.flip(0, first.getShards());
+            log("Missing shards " + shards, Project.MSG_WARN);
+        }
+
+        setCount(first.getCount());
+        setConfidence(first.getConfidence());
+
+        report(result.getAccumulator());
+        report(result.getEstimate(), -1);
+    }
+
+    /**
+     * Method to derive the seed of a stream from a root seed: the
+     * {@code index}-th output of SplitMix64 seeded with {@code seed}.
+     *
+     * @param   seed            The root seed.
+     * @param   index           The stream index.
+     *
+     * @return  The stream seed.
+     */
+    protected static long stream(long seed, long index) {
+        long z = seed + (index + 1) * GOLDEN_GAMMA;
+
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
 
     protected float asPercent(Number numerator, Number denominator) {
         return (numerator.floatValue() * 100) / denominator.floatValue();
     }
+
+    /**
+     * Interface implemented by partial simulation results.
+     *
+     * @param   <A>             The implementing type.
+     */
+    public interface Accumulator<A extends Accumulator<A>> extends Serializable {
+
+        /**
+         * Method to merge another partial result into {@code this} one.
+         *
+         * @param   that        The other {@link Accumulator}.
+         */
+        public void merge(A that);
+    }
+
+    /**
+     * Merged {@link Accumulator} and headline {@link Estimate}.
+     *
+     * @param   <A>             The {@link Accumulator} type.
+     */
+    @ToString
+    protected static class Result<A extends Accumulator<A>> implements Serializable {
+        private static final long serialVersionUID = 5290227052963339283L;
+
+        @Getter
+        private final A accumulator;
+        @Getter
+        private final Estimate estimate;
+
+        public Result(A accumulator, Estimate estimate) {
+            this.accumulator = accumulator;
+            this.estimate = estimate;
+        }
+
+        public void merge(Result<A> that) {
+            accumulator.merge(that.accumulator);
+            estimate.merge(that.estimate);
+        }
+    }
+
+    /**
+     * Checkpoint of a simulation: the {@link Result} of the first
+     * {@code trials} trials of the shard's {@code target}.  Each chunk's
+     * {@link Random} stream is a function of {@code seed} and the chunk
+     * index so the {@code trials} count is sufficient to continue the
+     * simulation.
+     *
+     * @param   <A>             The {@link Accumulator} type.
+     */
+    @ToString
+    protected static class Snapshot<A extends Accumulator<A>> implements Serializable {
+        private static final long serialVersionUID = -8437015596233541794L;
+
+        @Getter
+        private final String type;
+        @Getter
+        private final String task;
+        @Getter
+        private final Generator rng;
+        @Getter
+        private final long seed;
+        @Getter
+        private final long count;
+        @Getter
+        private final double confidence;
+        @Getter
+        private final int shard;
+        @Getter
+        private final int shards;
+        @Getter
+        private final long target;
+        @Getter
+        private final long trials;
+        @ToString.Exclude @Getter
+        private final Result<A> result;
+
+        public Snapshot(String type, String task, Generator rng, long seed,
+                        long count, double confidence,
+                        int shard, int shards, long target, long trials, Result<A> result) {
+            this.type = type;
+            this.task = task;
+            this.rng = rng;
+            this.seed = seed;
+            this.count = count;
+            this.confidence = confidence;
+            this.shard = shard;
+            this.shards = shards;
+            this.target = target;
+            this.trials = trials;
+            this.result = result;
+        }
+
+        /**
+         * Method to write {@code this} {@link Snapshot} (replacing any
+         * existing {@link File} atomically).
+         *
+         * @param   file        The {@link File}.
+         *
+         * @throws  IOException
+         *                      If the {@link Snapshot} cannot be written.
+         */
+        public void write(File file) throws IOException {
+            Serialization.write(this, file);
+        }
+
+        /**
+         * Static method to read a {@link Snapshot}.
+         *
+         * @param   <A>         The {@link Accumulator} type.
+         * @param   file        The {@link File}.
+         *
+         * @return  The {@link Snapshot}.
+         *
+         * @throws  IOException
+         *                      If the {@link Snapshot} cannot be read.
+         * @throws  ClassNotFoundException
+         *                      If the {@link Snapshot} cannot be read.
+         */
+        @SuppressWarnings({ "unchecked" })
+        public static <A extends Accumulator<A>> Snapshot<A> read(File file) throws IOException,
+                                                                                   ClassNotFoundException {
+            return (Snapshot<A>) Serialization.read(Snapshot.class, file);
+        }
+    }
+
+    /**
+     * Mergeable running mean and variance (Welford's algorithm) of
+     * {@code double} values.
+     */
+    @ToString
+    public static class Estimate implements Serializable {
+        private static final long serialVersionUID = -7424946339063802683L;
+
+        @Getter
+        private long count = 0;
+        @Getter
+        private double mean = 0;
+        private double m2 = 0;
+
+        public Estimate() { }
+
+        public void accept(double value) {
+            count += 1;
+
+            double delta = value - mean;
+
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        public void merge(Estimate that) {
+            if (that.count > 0) {
+                long n = count + that.count;
+                double delta = that.mean - mean;
+
+                mean += delta * that.count / n;
+                m2 += that.m2 + delta * delta * count * that.count / n;
+                count = n;
+            }
+        }
+
+        public double getVariance() {
+            return (count > 1) ? m2 / (count - 1) : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Method to calculate the half-width of the confidence interval of
+         * the mean.
+         *
+         * @param   z           The standard normal quantile (see
+         *                      {@link #z(double)}).
+         *
+         * @return  The half-width.
+         */
+        public double getHalfWidth(double z) {
+            return z * Math.sqrt(getVariance() / count);
+        }
+
+        /**
+         * Method to calculate the two-sided standard normal quantile for a
+         * confidence level (Acklam's approximation).
+         *
+         * @param   confidence  The confidence level in the range
+         *                      {@code (0, 1)}.
+         *
+         * @return  The quantile.
+         */
+        public static double z(double confidence) {
+            double p = (1 + confidence) / 2;
+            double x = 0;
+
+            if (p < P_LOW) {
+                double q = Math.sqrt(-2 * Math.log(p));
+
+                x = tail(q);
+            } else if (p <= 1 - P_LOW) {
+                double q = p - 0.5;
+                double r = q * q;
+
+                x = (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q
+                    / (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+            } else {
+                double q = Math.sqrt(-2 * Math.log(1 - p));
+
+                x = -tail(q);
+            }
+
+            return x;
+        }
+
+        private static double tail(double q) {
+            return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5])
+                / ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+        }
+
+        private static final double P_LOW = 0.02425;
+        private static final double[] A = {
+            -3.969683028665376e+01, 2.209460984245205e+02,
+            -2.759285104469687e+02, 1.383577518672690e+02,
+            -3.066479806614716e+01, 2.506628277459239e+00
+        };
+        private static final double[] B = {
+            -5.447609879822406e+01, 1.615858368580409e+02,
+            -1.556989798598866e+02, 6.680131188771972e+01,
+            -1.328068155288572e+01
+        };
+        private static final double[] C = {
+            -7.784894002430293e-03, -3.223964580411365e-01,
+            -2.400758277161838e+00, -2.549732539343734e+00,
+            4.374664141464968e+00, 2.938163982698783e+00
+        };
+        private static final double[] D = {
+            7.784695709041462e-03, 3.224671290700398e-01,
+            2.445134137142996e+00, 3.754408661907416e+00
+        };
+    }
+
+    /**
+     * Mergeable running count, minimum, maximum, and sum of {@code long}
+     * values.
+     */
+    @ToString
+    public static class Statistics implements Serializable {
+        private static final long serialVersionUID = 2462788659001713549L;
+
+        @Getter
+        private long count = 0;
+        @Getter
+        private long min = Long.MAX_VALUE;
+        @Getter
+        private long max = Long.MIN_VALUE;
+        @Getter
+        private long sum = 0;
+
+        public Statistics() { }
+
+        public void accept(long value) {
+            count += 1;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+        }
+
+        public void merge(Statistics that) {
+            count += that.count;
+            min = Math.min(min, that.min);
+            max = Math.max(max, that.max);
+            sum += that.sum;
+        }
+
+        public double getAverage() {
+            return (count > 0) ? ((double) sum) / count : 0.0;
+        }
+    }
+
+    /**
+     * Mergeable histogram of {@code int} values in the range
+     * {@code [0, size)}.
+     */
+    public static class Histogram implements Serializable {
+        private static final long serialVersionUID = -3155040226339513735L;
+
+        private final long[] counts;
+
+        public Histogram(int size) { counts = new long[size]; }
+
+        public int size() { return counts.length; }
+
+        public void accept(int value) { counts[value] += 1; }
+
+        public long get(int value) { return counts[value]; }
+
+        public long total() { return Arrays.stream(counts).sum(); }
+
+        public void merge(Histogram that) {
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] += that.counts[i];
+            }
+        }
+
+        @Override
+        public String toString() { return Arrays.toString(counts); }
+    }
+
+    /**
+     * Mergeable sparse histogram of non-negative {@code int} values (an
+     * open-addressing table of value counts).  The memory required is
+     * proportional to the number of distinct values rather than their
+     * range.
+     */
+    public static class SparseHistogram implements Serializable {
+        private static final long serialVersionUID = 2853061402587375717L;
+        private static final int FREE = -1;
+
+        private int[] values = free(16);
+        private long[] counts = new long[16];
+        private int size = 0;
+
+        public SparseHistogram() { }
+
+        public int size() { return size; }
+
+        public void accept(int value) { add(value, 1); }
+
+        public long get(int value) {
+            int slot = slot(values, value);
+
+            return (values[slot] != FREE) ? counts[slot] : 0;
+        }
+
+        public long total() { return Arrays.stream(counts).sum(); }
+
+        public void merge(SparseHistogram that) {
+            for (int i = 0; i < that.values.length; i += 1) {
+                if (that.values[i] != FREE) {
+                    add(that.values[i], that.counts[i]);
+                }
+            }
+        }
+
+        /**
+         * Method to get the values with a non-zero count.
+         *
+         * @return  The sorted values.
+         */
+        public int[] values() {
+            return Arrays.stream(values).filter(t -> t != FREE).sorted().toArray();
+        }
+
+        private void add(int value, long count) {
+            if (value < 0) {
+                throw new IllegalArgumentException("value must not be negative");
+            }
+
+            if (4 * (size + 1) > 3 * values.length) {
+                int[] values = free(2 * this.values.length);
+                long[] counts = new long[values.length];
+
+                for (int i = 0; i < this.values.length; i += 1) {
+                    if (this.values[i] != FREE) {
+                        int slot = slot(values, this.values[i]);
+
+                        values[slot] = this.values[i];
+                        counts[slot] = this.counts[i];
+                    }
+                }
+
+                this.values = values;
+                this.counts = counts;
+            }
+
+            int slot = slot(values, value);
+
+            if (values[slot] == FREE) {
+                values[slot] = value;
+                size += 1;
+            }
+
+            counts[slot] += count;
+        }
+
+        private static int[] free(int length) {
+            int[] values = new int[length];
+
+            Arrays.fill(values, FREE);
+
+            return values;
+        }
+
+        private static int slot(int[] values, int value) {
+            int mask = values.length - 1;
+            int hash = value * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+
+            while (values[slot] != FREE && values[slot] != value) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buffer = new StringBuilder("{");
+
+            for (int value : values()) {
+                buffer.append((buffer.length() > 1) ? ", " : "").append(value).append('=').append(get(value));
+            }
+
+            return buffer.append("}").toString();
+        }
+    }
+
+    /**
+     * Mergeable distribution of non-negative {@code long} values: exact
+     * counts for values in the range {@code [0, size)} and a log-linear
+     * overflow sketch (16 sub-buckets per power of two so the relative
+     * error is no more than 1/16) for the tail.  The memory required is
+     * independent of the number of values.
+     */
+    public static class Distribution implements Serializable {
+        private static final long serialVersionUID = 3398117806213346393L;
+        private static final int BITS = 4;
+        private static final int SUB = 1 << BITS;
+
+        private final long[] counts;
+        private final long[] overflow = new long[(Long.SIZE - BITS) * SUB];
+        @Getter
+        private long count = 0;
+
+        public Distribution(int size) { counts = new long[size]; }
+
+        public int size() { return counts.length; }
+
+        public void accept(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("value must not be negative");
+            }
+
+            if (value < counts.length) {
+                counts[(int) value] += 1;
+            } else {
+                overflow[bucket(value)] += 1;
+            }
+
+            count += 1;
+        }
+
+        public void merge(Distribution that) {
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] += that.counts[i];
+            }
+
+            for (int i = 0; i < overflow.length; i += 1) {
+                overflow[i] += that.overflow[i];
+            }
+
+            count += that.count;
+        }
+
+        /**
+         * Method to get the {@code q}-quantile: the least value with at
+         * least {@code q} of the values less than or equal to it.  Values
+         * in the overflow sketch are reported as the greatest value of
+         * their bucket.
+         *
+         * @param   q           The quantile in the range {@code (0, 1]}.
+         *
+         * @return  The value (or {@code -1} if there are no values).
+         */
+        public long quantile(double q) {
+            long rank = Math.max((long) Math.ceil(q * count), 1);
+            long total = 0;
+
+            for (int i = 0; i < counts.length; i += 1) {
+                total += counts[i];
+
+                if (total >= rank) {
+                    return i;
+                }
+            }
+
+            for (int i = 0; i < overflow.length; i += 1) {
+                total += overflow[i];
+
+                if (total >= rank) {
+                    return (i + 1 < overflow.length) ? lower(i + 1) - 1 : Long.MAX_VALUE;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Method to get the non-zero counts keyed by value (or, for the
+         * overflow sketch, by the least value of the bucket).
+         *
+         * @return  The {@link Map}.
+         */
+        public Map<Long,Long> asMap() {
+            TreeMap<Long,Long> map = new TreeMap<>();
+
+            for (int i = 0; i < counts.length; i += 1) {
+                if (counts[i] > 0) {
+                    map.put((long) i, counts[i]);
+                }
+            }
+
+            for (int i = 0; i < overflow.length; i += 1) {
+                if (overflow[i] > 0) {
+                    map.merge(Math.max(lower(i), counts.length), overflow[i], Long::sum);
+                }
+            }
+
+            return map;
+        }
+
+        private static int bucket(long value) {
+            int index = (int) value;
+
+            if (value >= SUB) {
+                int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+                index = (exponent - BITS + 1) * SUB + (int) ((value >>> (exponent - BITS)) & (SUB - 1));
+            }
+
+            return index;
+        }
+
+        private static long lower(int index) {
+            long value = index;
+
+            if (index >= SUB) {
+                int exponent = index / SUB + BITS - 1;
+
+                value = ((long) (SUB + index % SUB)) << (exponent - BITS);
+            }
+
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "Distribution(count=" + count + ", " + asMap() + ")";
+        }
+    }
+
+    /**
+     * {@link AbstractSimulationTask} nested element specifying the values
+     * of one attribute to sweep.  {@code values} is a comma-separated list
+     * of values and/or inclusive integer ranges ({@code from..to}).
+     */
+    @NoArgsConstructor @ToString
+    public static class Sweep {
+        @Getter @Setter
+        private String attribute = null;
+        @Getter @Setter
+        private String values = null;
+
+        /**
+         * Method to expand {@code values}.
+         *
+         * @return  The {@link List} of values.
+         */
+        public List<String> values() {
+            List<String> list = new ArrayList<>();
+
+            for (String value : values.split(",")) {
+                value = value.trim();
+
+                int index = value.indexOf("..");
+
+                if (index > 0) {
+                    long from = Long.parseLong(value.substring(0, index).trim());
+                    long to = Long.parseLong(value.substring(index + 2).trim());
+
+                    for (long i = from; i <= to; i += 1) {
+                        list.add(String.valueOf(i));
+                    }
+                } else if (! value.isEmpty()) {
+                    list.add(value);
+                }
+            }
+
+            return list;
+        }
+    }
+
+    /**
+     * Management interface for the progress of a running simulation.
+     * Registered (see {@link java.lang.management.ManagementFactory})
+     * under the name
+     * {@code ball.riddler538.ant.taskdefs:type=<task-class>,id=<hex>} for
+     * the duration of the run.
+     */
+    public interface SimulationMXBean {
+        public long getTrials();
+        public double getSeconds();
+        public double getTrialsPerSecond();
+
+        /**
+         * Method to get the estimated time remaining.
+         *
+         * @return  The seconds remaining or {@link Double#NaN} if
+         *          unknown.
+         */
+        public double getEta();
+        public double getEstimate();
+        public double getHalfWidth();
+        public double getConfidence();
+    }
+
+    /*
+     * Running totals of the chunks completed so far in the current
+     * simulate() call (plus any resumed trials).  Chunks are folded in as
+     * they finish so the estimate lags the workers by at most one chunk
+     * per thread.
+     */
+    private class Progress implements SimulationMXBean, Runnable {
+        private final long start;
+        private final long deadline;
+        private final long limit;
+        private final double z;
+        private final long initial;
+        private final Estimate estimate = new Estimate();
+
+        public Progress(long start, long deadline, long limit, double z, Estimate resumed) {
+            this.start = start;
+            this.deadline = deadline;
+            this.limit = limit;
+            this.z = z;
+
+            if (resumed != null) {
+                estimate.merge(resumed);
+            }
+
+            this.initial = estimate.getCount();
+        }
+
+        public synchronized void accept(Estimate chunk) { estimate.merge(chunk); }
+
+        @Override
+        public synchronized long getTrials() { return estimate.getCount(); }
+
+        @Override
+        public double getSeconds() { return ((double) (System.nanoTime() - start)) / NANOS; }
+
+        @Override
+        public synchronized double getTrialsPerSecond() {
+            return (estimate.getCount() - initial) / getSeconds();
+        }
+
+        @Override
+        public synchronized double getEta() {
+            double eta = Double.NaN;
+            double rate = getTrialsPerSecond();
+            double target = limit;
+
+            if (AbstractSimulationTask.this.getPrecision() > 0 && estimate.getVariance() > 0) {
+                double sd = Math.sqrt(estimate.getVariance());
+
+                target = Math.min(target, Math.pow(z * sd / AbstractSimulationTask.this.getPrecision(), 2));
+            }
+
+            if (rate > 0) {
+                eta = Math.max(target - estimate.getCount(), 0) / rate;
+            }
+
+            if (deadline != 0) {
+                double remaining = Math.max(deadline - System.nanoTime(), 0) / NANOS;
+
+                eta = Double.isNaN(eta) ? remaining : Math.min(eta, remaining);
+            }
+
+            return eta;
+        }
+
+        @Override
+        public synchronized double getEstimate() { return estimate.getMean(); }
+
+        @Override
+        public synchronized double getHalfWidth() { return estimate.getHalfWidth(z); }
+
+        @Override
+        public double getConfidence() { return AbstractSimulationTask.this.getConfidence(); }
+
+        @Override
+        public void run() {
+            String message = null;
+
+            synchronized (this) {
+                long trials = getTrials();
+
+                message = "trials: " + trials;
+
+                if (deadline == 0) {
+                    message += String.format(" (%.1f%%)", asPercent(trials, limit));
+                }
+
+                message +=
+                    String.format(", trials/second: %.0f, ETA: %.0fs, estimate: %g +/- %g",
+                                  getTrialsPerSecond(), getEta(), getEstimate(), getHalfWidth());
+            }
+
+            log(message);
+        }
+    }
+
+    private class Chunks extends RecursiveTask<Result<A>> {
+        private static final long serialVersionUID = 1556407356542937652L;
+
+        private final long seed;
+        private final long from;
+        private final long to;
+
+        public Chunks(long seed, long from, long to) {
+            super();
+
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result<A> compute() {
+            Result<A> result = null;
+            long start = from / CHUNK;
+            long end = (to / CHUNK) + ((to % CHUNK != 0) ? 1 : 0);
+
+            if (end - start > 1) {
+                long middle = ((start + end) >>> 1) * CHUNK;
+                Chunks right = new Chunks(seed, middle, to);
+
+                right.fork();
+
+                result = new Chunks(seed, from, middle).compute();
+                result.merge(right.join());
+            } else {
+                Random random = random(stream(seed, start * getShards() + getShard()));
+                A accumulator = accumulator();
+                Estimate estimate = new Estimate();
+                long i = start * CHUNK;
+                double[] values = new double[(int) (to - Math.min(i, from))];
+
+                if (i < from) {
+                    /*
+                     * Replay the trials before from (resumed mid-chunk) to
+                     * advance the chunk's stream.
+                     */
+                    trials(accumulator(), random, values, (int) (from - i));
+                    i = from;
+                }
+
+                int n = (int) (to - i);
+
+                trials(accumulator, random, values, n);
+
+                for (int k = 0; k < n; k += 1) {
+                    estimate.accept(values[k]);
+                }
+
+                result = new Result<>(accumulator, estimate);
+
+                Progress progress = current;
+
+                if (progress != null) {
+                    progress.accept(estimate);
+                }
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,280 @@
+package ball.riddler538.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Solutions for the 538 Riddler
+ * %%
+ * Copyright (C) 2015 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Non-cryptographic pseudo-random number generators for
+ * {@link AbstractSimulationTask}.  Every generator is presented as a
+ * {@link Random} (so simulation kernels and
+ * {@link java.util.Collections#shuffle(java.util.List,Random)} are
+ * unaffected by the choice) but does not use {@link Random}'s
+ * {@link java.util.concurrent.atomic.AtomicLong} seed.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+public enum Generator {
+    /**
+     * {@link SplittableRandom}.
+     */
+    SPLITTABLE {
+        @Override
+        public Random newInstance(long seed) { return new SplittableRandomAdapter(seed); }
+    },
+    /**
+     * SplitMix64.
+     */
+    SPLITMIX64 {
+        @Override
+        public Random newInstance(long seed) { return new SplitMix64(seed); }
+    },
+    /**
+     * xoshiro256**.
+     */
+    XOSHIRO256 {
+        @Override
+        public Random newInstance(long seed) { return new Xoshiro256(seed); }
+    },
+    /**
+     * xoroshiro128++.
+     */
+    XOROSHIRO128 {
+        @Override
+        public Random newInstance(long seed) { return new Xoroshiro128(seed); }
+    },
+    /**
+     * PCG32 (XSH-RR).
+     */
+    PCG32 {
+        @Override
+        public Random newInstance(long seed) { return new PCG32(seed); }
+    },
+    /**
+     * {@link Random} (48-bit LCG) for comparison.
+     */
+    RANDOM {
+        @Override
+        public Random newInstance(long seed) { return new Random(seed); }
+    };
+
+    /**
+     * Method to create a new generator instance.
+     *
+     * @param   seed            The 64-bit seed.
+     *
+     * @return  The generator as a {@link Random}.
+     */
+    public abstract Random newInstance(long seed);
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Base class for 64-bit generators: subclasses implement
+     * {@link #nextLong()} and everything else is derived from it.
+     */
+    private static abstract class AbstractGenerator extends Random {
+        private static final long serialVersionUID = -7213693735815541449L;
+
+        protected AbstractGenerator() { super(0); }
+
+        @Override
+        public abstract long nextLong();
+
+        @Override
+        protected int next(int bits) { return (int) (nextLong() >>> (64 - bits)); }
+
+        @Override
+        public int nextInt() { return (int) (nextLong() >>> 32); }
+
+        /*
+         * Lemire's nearly divisionless bounded integer.
+         */
+        @Override
+        public int nextInt(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("bound must be positive");
+            }
+
+            long m = (nextInt() & 0xFFFFFFFFL) * bound;
+            long l = m & 0xFFFFFFFFL;
+
+            if (l < bound) {
+                long t = (-bound & 0xFFFFFFFFL) % bound;
+
+                while (l < t) {
+                    m = (nextInt() & 0xFFFFFFFFL) * bound;
+                    l = m & 0xFFFFFFFFL;
+                }
+            }
+
+            return (int) (m >>> 32);
+        }
+
+        @Override
+        public boolean nextBoolean() { return nextLong() < 0; }
+
+        @Override
+        public double nextDouble() { return (nextLong() >>> 11) * 0x1.0p-53; }
+    }
+
+    private static class SplittableRandomAdapter extends Random {
+        private static final long serialVersionUID = -3396195294498462358L;
+
+        private final SplittableRandom random;
+
+        public SplittableRandomAdapter(long seed) {
+            super(0);
+
+            random = new SplittableRandom(seed);
+        }
+
+        @Override
+        protected int next(int bits) { return (int) (random.nextLong() >>> (64 - bits)); }
+
+        @Override
+        public int nextInt() { return random.nextInt(); }
+
+        @Override
+        public int nextInt(int bound) { return random.nextInt(bound); }
+
+        @Override
+        public long nextLong() { return random.nextLong(); }
+
+        @Override
+        public boolean nextBoolean() { return random.nextBoolean(); }
+
+        @Override
+        public double nextDouble() { return random.nextDouble(); }
+    }
+
+    private static class SplitMix64 extends AbstractGenerator {
+        private static final long serialVersionUID = 2520485466339005466L;
+
+        private long state;
+
+        public SplitMix64(long seed) {
+            super();
+
+            state = seed;
+        }
+
+        @Override
+        public long nextLong() { return mix64(state += GOLDEN_GAMMA); }
+    }
+
+    private static class Xoshiro256 extends AbstractGenerator {
+        private static final long serialVersionUID = 4361207437785357347L;
+
+        private long s0;
+        private long s1;
+        private long s2;
+        private long s3;
+
+        public Xoshiro256(long seed) {
+            super();
+
+            s0 = mix64(seed += GOLDEN_GAMMA);
+            s1 = mix64(seed += GOLDEN_GAMMA);
+            s2 = mix64(seed += GOLDEN_GAMMA);
+            s3 = mix64(seed += GOLDEN_GAMMA);
+        }
+
+        @Override
+        public long nextLong() {
+            long result = Long.rotateLeft(s1 * 5, 7) * 9;
+            long t = s1 << 17;
+
+            s2 ^= s0;
+            s3 ^= s1;
+            s1 ^= s2;
+            s0 ^= s3;
+            s2 ^= t;
+            s3 = Long.rotateLeft(s3, 45);
+
+            return result;
+        }
+    }
+
+    private static class Xoroshiro128 extends AbstractGenerator {
+        private static final long serialVersionUID = -1750929520937585765L;
+
+        private long s0;
+        private long s1;
+
+        public Xoroshiro128(long seed) {
+            super();
+
+            s0 = mix64(seed += GOLDEN_GAMMA);
+            s1 = mix64(seed += GOLDEN_GAMMA);
+        }
+
+        @Override
+        public long nextLong() {
+            long result = Long.rotateLeft(s0 + s1, 17) + s0;
+
+            s1 ^= s0;
+            s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+            s1 = Long.rotateLeft(s1, 28);
+
+            return result;
+        }
+    }
+
+    private static class PCG32 extends AbstractGenerator {
+        private static final long serialVersionUID = -1280287002606796069L;
+        private static final long MULTIPLIER = 6364136223846793005L;
+
+        private long state;
+        private final long increment;
+
+        public PCG32(long seed) {
+            super();
+
+            increment = (mix64(seed + GOLDEN_GAMMA) << 1) | 1;
+            state = 0;
+            nextInt();
+            state += seed;
+            nextInt();
+        }
+
+        @Override
+        public int nextInt() {
+            long old = state;
+
+            state = old * MULTIPLIER + increment;
+
+            return Integer.rotateRight((int) (((old >>> 18) ^ old) >>> 27), (int) (old >>> 59));
+        }
+
+        @Override
+        protected int next(int bits) { return nextInt() >>> (32 - bits); }
+
+        @Override
+        public long nextLong() { return ((long) nextInt() << 32) | (nextInt() & 0xFFFFFFFFL); }
+    }
+}
@@ -0,0 +1,84 @@
+package ball.riddler538.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Solutions for the 538 Riddler
+ * %%
+ * Copyright (C) 2015 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import ball.util.ant.taskdefs.AntTask;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * {@link.uri http://ant.apache.org/ Ant} {@link org.apache.tools.ant.Task}
+ * to merge the {@link AbstractSimulationTask.Snapshot}s written by the
+ * shards of a sharded {@link AbstractSimulationTask} run and report the
+ * combined results with the originating task's tables.  The
+ * {@link AbstractSimulationTask.Snapshot}s are specified with nested
+ * {@link FileSet}s.
+ *
+ * {@ant.task}
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@AntTask("merge-simulation-results")
+@NoArgsConstructor @ToString
+public class MergeSimulationResultsTask extends AbstractTask {
+    private final List<FileSet> filesets = new ArrayList<>();
+
+    public void addFileset(FileSet set) { filesets.add(set); }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void execute() throws BuildException {
+        super.execute();
+
+        try {
+            List<AbstractSimulationTask.Snapshot> snapshots = new ArrayList<>();
+
+            for (FileSet set : filesets) {
+                File dir = set.getDir(getProject());
+
+                for (String name : set.getDirectoryScanner(getProject()).getIncludedFiles()) {
+                    snapshots.add(AbstractSimulationTask.Snapshot.read(new File(dir, name)));
+                }
+            }
+
+            if (snapshots.isEmpty()) {
+                throw new BuildException("No snapshots specified");
+            }
+
+            String type = snapshots.get(0).getType();
+            AbstractSimulationTask task =
+                (AbstractSimulationTask)
+                getClassForName(type).getDeclaredConstructor()
+                .newInstance();
+
+            task.bindToOwner(this);
+            task.merge((List) snapshots);
+        } catch (BuildException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            throw new BuildException(throwable);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ball.riddler538.ant.taskdefs;
+/*-
+ * ##########################################################################
+ * Solutions for the 538 Riddler
+ * %%
+ * Copyright (C) 2015 - 2022 Allen D. Ball
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ##########################################################################
+ */
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.NoArgsConstructor;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Static methods to write and read {@link Serializable} objects as gzipped
+ * object streams.
+ *
+ * @author {@link.uri mailto:ball@hcf.dev Allen D. Ball}
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class Serialization {
+
+    /**
+     * Static method to write an object (replacing any existing
+     * {@link File} atomically).
+     *
+     * @param   object          The {@link Serializable} object.
+     * @param   file            The {@link File}.
+     *
+     * @throws  IOException     If the object cannot be written.
+     */
+    public static void write(Serializable object, File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+
+        try (ObjectOutputStream out =
+                 new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(tmp)))) {
+            out.writeObject(object);
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Static method to read an object.
+     *
+     * @param   <T>             The object type.
+     * @param   type            The object {@link Class}.
+     * @param   file            The {@link File}.
+     *
+     * @return  The object.
+     *
+     * @throws  IOException     If the object cannot be read.
+     * @throws  ClassNotFoundException
+     *                          If the object cannot be read.
+     */
+    public static <T> T read(Class<T> type, File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+            return type.cast(in.readObject());
+        }
+    }
+}
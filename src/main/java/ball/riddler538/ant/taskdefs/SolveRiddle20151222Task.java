@@ -18,12 +18,16 @@ package ball.riddler538.ant.taskdefs;
  * limitations under the License.
  * ##########################################################################
  */
+import ball.swing.table.SimpleTableModel;
 import ball.util.ant.taskdefs.AntTask;
-import java.util.ArrayList;
+import java.io.Serializable;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 import org.apache.tools.ant.BuildException;
 
@@ -53,7 +57,16 @@ import org.apache.tools.ant.BuildException;
  * the “moments of clarity” are so brief as to take no measurable time at
  * all.)
  * </p>
- * Solution uses the Monte Carlo method.
+ * Solution uses the Monte Carlo method.  The task durations may be
+ * specified as a comma-separated list with {@code durations} (each equally
+ * likely unless a parallel list of {@code weights} is specified).  The
+ * simulation generalizes to any number of {@code walkers} (the walker with
+ * the least total (the last if tied) starts the next task) which stop when
+ * {@link Stop#ALL ALL} walkers or {@link Stop#ANY ANY} two walkers are
+ * between tasks at the same time.  With {@code exact="true"} (two walkers
+ * only), the meeting-time distribution is calculated by dynamic
+ * programming over the difference between the two running totals.  The
+ * simulation reports duration quantiles and the full histogram.
  *
  * {@ant.task}
  *
@@ -61,75 +74,373 @@ import org.apache.tools.ant.BuildException;
  */
 @AntTask("solve-riddle-2015-12-22")
 @NoArgsConstructor @ToString
-public class SolveRiddle20151222Task extends AbstractSimulationTask {
+public class SolveRiddle20151222Task extends AbstractSimulationTask<SolveRiddle20151222Task.Tally> {
+    private static final double EPSILON = 1e-15;
+    private static final int LIMIT = 1 << 24;
+    private static final int BINS = 1024;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    @Getter @Setter
+    private String durations = "1,2,3,4,5";
+    @Getter @Setter
+    private String weights = null;
+    @Getter @Setter
+    private int walkers = 2;
+    @Getter @Setter
+    private Stop stop = Stop.ALL;
+
+    @Override
+    protected Tally accumulator() {
+        if (getWalkers() < 2) {
+            throw new BuildException("`walkers' must be at least 2");
+        }
+
+        return new Tally(durations(), getWalkers(), getStop());
+    }
+
     @Override
-    public void execute() throws BuildException {
-        super.execute();
+    protected double trial(Tally tally, Random random) {
+        int duration = duration(tally, random);
+
+        tally.durations.accept(duration);
+        tally.distribution.accept(duration);
+
+        return duration;
+    }
+
+    @Override
+    protected void report(Tally tally) {
+        Statistics durations = tally.durations;
+
+        log("count: " + durations.getCount());
+        log("min: " + durations.getMin());
+        log("max: " + durations.getMax());
+        log("average: " + ((float) durations.getAverage()));
+
+        Distribution distribution = tally.distribution;
+
+        for (double q : QUANTILES) {
+            log(label(q) + ": " + distribution.quantile(q));
+        }
+
+        SimpleTableModel model =
+            new SimpleTableModel(new Object[][] { }, "minutes", "count", "%", "cum%");
+        long cumulative = 0;
+
+        for (Map.Entry<Long,Long> entry : distribution.asMap().entrySet()) {
+            cumulative += entry.getValue();
+
+            model.row(entry.getKey(), entry.getValue(),
+                      asPercent(entry.getValue(), distribution.getCount()),
+                      asPercent(cumulative, distribution.getCount()));
+        }
+
+        log();
+        log(model);
+    }
+
+    /*
+     * The state is the leader's total t and the lead d > 0.  The trailing
+     * player draws x: x < d leaves the leader ahead by d - x (at the same
+     * t), x == d meets at t, and x > d changes the leader (at t + x - d and
+     * ahead by x - d).  Processing t in increasing order (and d in
+     * decreasing order within t) visits every state after all of its
+     * predecessors so the probability mass is propagated in one pass.
+     */
+    @Override
+    protected void exact() {
+        if (getWalkers() != 2) {
+            throw new BuildException("`exact' requires 2 `walkers'");
+        }
+
+        Durations durations = durations();
+        int[] choices = durations.values;
+        double[] p = durations.probabilities;
+        int max = Arrays.stream(choices).max().getAsInt();
+        double[][] mass = new double[max + 1][max + 1];
+        TreeMap<Integer,Double> distribution = new TreeMap<>();
+        double remaining = 1;
+
+        for (int i = 0; i < choices.length; i += 1) {
+            mass[choices[i] % mass.length][choices[i]] += p[i];
+        }
+
+        for (int t = 1; remaining > EPSILON; t += 1) {
+            double[] row = mass[t % mass.length];
+            double meet = 0;
+
+            for (int d = max; d > 0; d -= 1) {
+                double m = row[d];
+
+                row[d] = 0;
 
-        try {
-            ArrayList<Try> tries = new ArrayList<>(getCount());
+                if (m > 0) {
+                    for (int i = 0; i < choices.length; i += 1) {
+                        int x = choices[i];
+
+                        if (x < d) {
+                            row[d - x] += m * p[i];
+                        } else if (x == d) {
+                            meet += m * p[i];
+                        } else {
+                            mass[(t + x - d) % mass.length][x - d] += m * p[i];
+                        }
+                    }
+                }
+            }
 
-            for (int i = 0, n = getCount(); i < n; i += 1) {
-                tries.add(new Try());
+            if (meet > 0) {
+                distribution.put(t, meet);
             }
 
-            int min = tries.get(0).duration();
-            int max = tries.get(0).duration();
-            int sum = 0;
+            remaining = 0;
 
-            for (Try tryN : tries) {
-                int duration = tryN.duration();
+            for (double[] array : mass) {
+                for (double value : array) {
+                    remaining += value;
+                }
+            }
 
-                min = Math.min(min, duration);
-                max = Math.max(max, duration);
-                sum += duration;
+            if (t > LIMIT) {
+                throw new BuildException("Probability " + remaining + " of never meeting");
             }
+        }
+
+        double mean = 0;
+        double square = 0;
 
-            log("count: " + tries.size());
-            log("min: " + min);
-            log("max: " + max);
-            log("average: " + (((float) sum) / tries.size()));
-        } catch (BuildException exception) {
-            throw exception;
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
-            throw new BuildException(throwable);
+        for (Map.Entry<Integer,Double> entry : distribution.entrySet()) {
+            mean += entry.getKey() * entry.getValue();
+            square += ((double) entry.getKey()) * entry.getKey() * entry.getValue();
         }
+
+        log("min: " + distribution.firstKey());
+        log("average: " + mean);
+        log("standard deviation: " + Math.sqrt(square - mean * mean));
+
+        double cumulative = 0;
+        int q = 0;
+
+        for (Map.Entry<Integer,Double> entry : distribution.entrySet()) {
+            cumulative += entry.getValue();
+
+            while (q < QUANTILES.length && cumulative >= QUANTILES[q]) {
+                log(label(QUANTILES[q]) + ": " + entry.getKey());
+                q += 1;
+            }
+
+            if (q == QUANTILES.length) {
+                break;
+            }
+        }
+
+        SimpleTableModel model =
+            new SimpleTableModel(new Object[][] { }, "minutes", "probability", "cumulative");
+
+        cumulative = 0;
+
+        for (Map.Entry<Integer,Double> entry : distribution.entrySet()) {
+            cumulative += entry.getValue();
+
+            model.row(entry.getKey(), entry.getValue(), cumulative);
+        }
+
+        log();
+        log(model);
+    }
+
+    private static String label(double q) {
+        return "p" + String.valueOf(q * 100).replaceAll("[.]0$", "");
     }
 
-    private static final Random RANDOM = new Random();
-    private static final List<Integer> DURATIONS =
-        Arrays.asList(1, 2, 3, 4 ,5);
+    private Durations durations() {
+        int[] values =
+            Arrays.stream(getDurations().split(","))
+            .mapToInt(t -> Integer.parseInt(t.trim()))
+            .toArray();
 
+        if (Arrays.stream(values).anyMatch(t -> t < 1)) {
+            throw new BuildException("`durations' must be positive");
+        }
+
+        double[] weights = new double[values.length];
+
+        Arrays.fill(weights, 1);
+
+        if (getWeights() != null) {
+            weights =
+                Arrays.stream(getWeights().split(","))
+                .mapToDouble(t -> Double.parseDouble(t.trim()))
+                .toArray();
+
+            if (weights.length != values.length) {
+                throw new BuildException("`weights' must be parallel to `durations'");
+            }
+
+            if (Arrays.stream(weights).anyMatch(t -> ! (t >= 0))
+                || Arrays.stream(weights).sum() <= 0) {
+                throw new BuildException("`weights' must be non-negative with a positive sum");
+            }
+        }
+
+        return new Durations(values, weights);
+    }
+
+    /*
+     * The walkers' totals are kept in the Tally's scratch array.  The
+     * walker with the least total (the last if tied so the sister starts
+     * first) starts the next task and the stopping rule counts the totals
+     * equal to the mover's new total.
+     */
+    private static int duration(Tally tally, Random random) {
+        int[] totals = tally.totals();
+        int n = totals.length;
+        int need = (tally.stop == Stop.ALL) ? n : 2;
+        int total = 0;
+
+        Arrays.fill(totals, 0);
+
+        for (;;) {
+            int mover = n - 1;
+
+            for (int i = n - 2; i >= 0; i -= 1) {
+                mover = (totals[i] < totals[mover]) ? i : mover;
+            }
+
+            total = (totals[mover] += tally.choices.next(random));
+
+            int equal = 0;
+
+            for (int i = 0; i < n; i += 1) {
+                equal += (totals[i] == total) ? 1 : 0;
+            }
+
+            if (equal >= need) {
+                break;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Stopping rule.
+     */
+    public enum Stop {
+        /**
+         * All walkers are between tasks.
+         */
+        ALL,
+        /**
+         * Any two walkers are between tasks.
+         */
+        ANY;
+    }
+
+    /*
+     * Duration distribution: uniform choice if the weights are equal and
+     * Vose's alias method otherwise.
+     */
     @ToString
-    private class Try {
-        private List<Integer> you = new ArrayList<>();
-        private List<Integer> sister = new ArrayList<>();
-
-        public Try() {
-            for (;;) {
-                if (sum(you) < sum(sister)) {
-                    you.add(DURATIONS.get(RANDOM.nextInt(DURATIONS.size())));
+    protected static class Durations implements Serializable {
+        private static final long serialVersionUID = -4474316606569838812L;
+
+        private final int[] values;
+        private final double[] probabilities;
+        private final boolean uniform;
+        private final double[] cutoff;
+        private final int[] alias;
+
+        public Durations(int[] values, double[] weights) {
+            int n = values.length;
+            double sum = Arrays.stream(weights).sum();
+
+            this.values = values;
+            this.probabilities = Arrays.stream(weights).map(t -> t / sum).toArray();
+            this.uniform = Arrays.stream(weights).allMatch(t -> t == weights[0]);
+            this.cutoff = new double[n];
+            this.alias = new int[n];
+
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int s = 0;
+            int l = 0;
+
+            for (int i = 0; i < n; i += 1) {
+                cutoff[i] = probabilities[i] * n;
+                alias[i] = i;
+
+                if (cutoff[i] < 1) {
+                    small[s++] = i;
                 } else {
-                    sister.add(DURATIONS.get(RANDOM.nextInt(DURATIONS.size())));
+                    large[l++] = i;
                 }
+            }
+
+            while (s > 0 && l > 0) {
+                int less = small[--s];
+                int more = large[--l];
+
+                alias[less] = more;
+                cutoff[more] -= 1 - cutoff[less];
 
-                if (sum(you) == sum(sister)) {
-                    break;
+                if (cutoff[more] < 1) {
+                    small[s++] = more;
+                } else {
+                    large[l++] = more;
                 }
             }
+
+            while (l > 0) {
+                cutoff[large[--l]] = 1;
+            }
+
+            while (s > 0) {
+                cutoff[small[--s]] = 1;
+            }
         }
 
-        public int duration() { return sum(you); }
+        public int next(Random random) {
+            int i = random.nextInt(values.length);
 
-        private int sum(List<Integer> list) {
-            int total = 0;
+            if (! uniform && random.nextDouble() >= cutoff[i]) {
+                i = alias[i];
+            }
 
-            for (Integer element : list) {
-                total += element;
+            return values[i];
+        }
+    }
+
+    @ToString
+    protected static class Tally implements Accumulator<Tally> {
+        private static final long serialVersionUID = -2397395640396049512L;
+
+        private final Durations choices;
+        private final int walkers;
+        private final Stop stop;
+        private final Statistics durations = new Statistics();
+        private final Distribution distribution = new Distribution(BINS);
+        @ToString.Exclude
+        private transient int[] totals = null;
+
+        public Tally(Durations choices, int walkers, Stop stop) {
+            this.choices = choices;
+            this.walkers = walkers;
+            this.stop = stop;
+        }
+
+        private int[] totals() {
+            if (totals == null) {
+                totals = new int[walkers];
             }
 
-            return total;
+            return totals;
+        }
+
+        @Override
+        public void merge(Tally that) {
+            durations.merge(that.durations);
+            distribution.merge(that.distribution);
         }
     }
 }
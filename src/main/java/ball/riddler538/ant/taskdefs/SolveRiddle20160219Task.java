@@ -21,11 +21,10 @@ package ball.riddler538.ant.taskdefs;
 import ball.swing.table.MapsTableModel;
 import ball.swing.table.SimpleTableModel;
 import ball.util.ant.taskdefs.AntTask;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -33,6 +32,7 @@ import lombok.Setter;
 import lombok.ToString;
 import org.apache.tools.ant.BuildException;
 
+import static java.math.MathContext.DECIMAL128;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 
 /**
@@ -51,7 +51,12 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
  * the probability that you, the hundredth passenger to board, finds your
  * seat unoccupied?
  * </p>
- * Solution uses the Monte Carlo method.
+ * Solution uses the Monte Carlo method (passengers who never ended in
+ * the last seat are omitted from the table).  With {@code exact="true"}, the
+ * table is calculated from the closed form: a displaced passenger {@code k}
+ * chooses from {@code seats - k} free seats so passenger {@code j > 0} is
+ * displaced with probability {@code 1/(seats-j+1)} and the expected counts
+ * of {@code count} trials are reported.
  *
  * {@ant.task}
  *
@@ -59,119 +64,185 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
  */
 @AntTask("solve-riddle-2016-02-19")
 @NoArgsConstructor @ToString
-public class SolveRiddle20160219Task extends AbstractSimulationTask {
-    @Getter @Setter
+public class SolveRiddle20160219Task extends AbstractSimulationTask<SolveRiddle20160219Task.Tally> {
+    @Setter
     private int passengers = -1;
     @Getter @Setter
     private int seats = 100;
 
+    /**
+     * Method to get the number of passengers.
+     *
+     * @return  {@code passengers} if specified; {@code seats} otherwise.
+     */
+    public int getPassengers() { return (passengers < 0) ? getSeats() : passengers; }
+
     @Override
-    public void execute() throws BuildException {
-        super.execute();
+    protected Tally accumulator() {
+        validate();
+
+        return new Tally(getPassengers(), getSeats());
+    }
 
-        if (getPassengers() < 0) {
-            setPassengers(getSeats());
+    private void validate() {
+        if (! (1 < getPassengers() && getPassengers() <= getSeats())) {
+            throw new BuildException("`passengers' must be in the range [2, `seats']");
         }
+    }
 
-        try {
-            List<Integer> passengers = asList(0, getPassengers());
-            List<Integer> seats = asList(0, getSeats());
-            ArrayList<Simulation> simulations = new ArrayList<>(getCount());
+    @Override
+    protected double trial(Tally tally, Random random) {
+        int occupant = occupant(tally.passengers, tally.seats, tally.seatN, random);
 
-            for (int i = 0, n = getCount(); i < n; i += 1) {
-                simulations.add(new Simulation(passengers, seats));
-            }
+        tally.occupants.accept(occupant);
 
-            int passengerN = passengers.get(passengers.size() - 1);
-            int seatN = passengerN;
-            int successes = 0;
+        return (occupant == tally.passengerN) ? 1 : 0;
+    }
 
-            for (Simulation simulation : simulations) {
-                if (simulation.get(seatN) == passengerN) {
-                    successes += 1;
-                }
-            }
+    @Override
+    protected void report(Tally tally) {
+        int passengerN = tally.passengerN;
+        long count = tally.occupants.total();
+        long successes = tally.occupants.get(passengerN);
+        ArrayList<Map<Integer,Number>> maps = new ArrayList<>();
+
+        maps.add(new TreeMap<Integer,Number>());
+        maps.add(new TreeMap<Integer,Number>());
+        maps.add(new TreeMap<Integer,Number>());
+
+        float cumulative = (float) 0;
 
-            log(new SimpleTableModel(new Object[][] { }, 3)
-                .row("seats:", getSeats(), EMPTY)
-                .row("passengers:", getPassengers(), EMPTY)
-                .row("count:", simulations.size(), EMPTY)
-                .row("successes:", successes, asPercent(successes, simulations.size()) + "%"));
+        for (int passenger : tally.occupants.values()) {
+            long occupants = tally.occupants.get(passenger);
+            float probability = asPercent(occupants, count);
 
-            String[] headers = new String[] { "passenger", "seat#" + seatN + "count", "%", "cum%" };
-            ArrayList<Map<Integer,Number>> maps = new ArrayList<>();
+            maps.get(0).put(passenger, occupants);
+            maps.get(1).put(passenger, probability);
+
+            cumulative += probability;
+
+            maps.get(2).put(passenger, cumulative);
+        }
 
-            maps.add(new TreeMap<Integer,Number>());
-            maps.add(new TreeMap<Integer,Number>());
-            maps.add(new TreeMap<Integer,Number>());
+        report(tally.seats, tally.passengers, count, successes, asPercent(successes, count), maps);
+    }
 
-            for (int passenger : passengers) {
-                maps.get(0).put(passenger, 0);
+    /*
+     * The probability that passenger k (0 < k < passengerN) ends in seatN
+     * is P(k displaced) / (seats - k) = 1/((seats-k+1)(seats-k)) and the
+     * cumulative probability through k telescopes to 1/(seats-k).
+     */
+    @Override
+    protected void exact() {
+        validate();
+
+        int seats = getSeats();
+        int passengers = getPassengers();
+        int passengerN = passengers - 1;
+        BigDecimal count = BigDecimal.valueOf(getCount());
+        BigDecimal hundred = BigDecimal.valueOf(100);
+        BigDecimal successes = null;
+        BigDecimal percent = null;
+        ArrayList<Map<Integer,Number>> maps = new ArrayList<>();
+
+        maps.add(new TreeMap<Integer,Number>());
+        maps.add(new TreeMap<Integer,Number>());
+        maps.add(new TreeMap<Integer,Number>());
+
+        for (int k = 0; k < passengers; k += 1) {
+            BigDecimal probability = null;
+            BigDecimal cumulative = null;
+
+            if (k == passengerN) {
+                probability = ratio(seats - passengers + 1, seats - passengers + 2);
+                cumulative = BigDecimal.ONE;
+            } else {
+                probability = ratio(1, (k > 0) ? ((long) (seats - k + 1)) * (seats - k) : seats);
+                cumulative = ratio(1, seats - k);
             }
 
-            for (Simulation simulation : simulations) {
-                int passenger = simulation.get(seatN);
+            maps.get(0).put(k, plain(count.multiply(probability, DECIMAL128)));
+            maps.get(1).put(k, plain(probability.multiply(hundred)));
+            maps.get(2).put(k, plain(cumulative.multiply(hundred)));
 
-                maps.get(0).put(passenger, maps.get(0).get(passenger).intValue() + 1);
+            if (k == passengerN) {
+                successes = plain(count.multiply(probability, DECIMAL128));
+                percent = plain(probability.multiply(hundred));
             }
+        }
 
-            float cumulative = (float) 0;
+        report(seats, passengers, count, successes, percent, maps);
+    }
 
-            for (int passenger : passengers) {
-                float probability = asPercent(maps.get(0).get(passenger), simulations.size());
+    private static BigDecimal ratio(long numerator, long denominator) {
+        return BigDecimal.valueOf(numerator).divide(BigDecimal.valueOf(denominator), DECIMAL128);
+    }
 
-                maps.get(1).put(passenger, probability);
+    private static BigDecimal plain(BigDecimal value) {
+        value = value.stripTrailingZeros();
 
-                cumulative += probability;
+        return (value.scale() < 0) ? value.setScale(0) : value;
+    }
 
-                maps.get(2).put(passenger, cumulative);
-            }
+    private void report(int seats, int passengers, Number count, Number successes, Number percent,
+                        ArrayList<Map<Integer,Number>> maps) {
+        log(new SimpleTableModel(new Object[][] { }, 3)
+            .row("seats:", seats, EMPTY)
+            .row("passengers:", passengers, EMPTY)
+            .row("count:", count, EMPTY)
+            .row("successes:", successes, percent + "%"));
 
-            log();
-            log(new MapsTableModel(maps, "passenger", "seat#" + seatN + " count", "%", "cum%"));
-        } catch (BuildException exception) {
-            throw exception;
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
-            throw new BuildException(throwable);
-        }
+        log();
+        log(new MapsTableModel(maps, "passenger", "seat#" + (passengers - 1) + " count", "%", "cum%"));
     }
 
-    private List<Integer> asList(int start, int end) {
-        Integer[] array = new Integer[end - start];
+    /*
+     * Only the chain of displaced passengers is sampled: displaced
+     * passenger k (initially 0) chooses uniformly from the seats - k free
+     * seats which are the assigned seats k + 1, ..., seatN (displacing
+     * that seat's passenger or, for seatN, ending the trial with k in
+     * seatN) and seat 0 or an unassigned seat (ending the chain so seatN's
+     * passenger finds their seat free).
+     */
+    private static int occupant(int passengers, int seats, int seatN, Random random) {
+        int k = 0;
+
+        for (;;) {
+            int choice = random.nextInt(seats - k);
+
+            if (choice >= seatN - k) {
+                return seatN;
+            }
 
-        for (int i = 0; i < array.length; i += 1) {
-            array[i] = start + i;
-        }
+            int seat = k + 1 + choice;
+
+            if (seat == seatN) {
+                return k;
+            }
 
-        return Collections.unmodifiableList(Arrays.asList(array));
+            k = seat;
+        }
     }
 
-    private class Simulation extends TreeMap<Integer,Integer> {
-        private static final long serialVersionUID = -4047361911757741221L;
-
-        public Simulation(List<Integer> passengers, List<Integer> seats) {
-            passengers = new ArrayList<>(passengers);
-            seats = new ArrayList<>(seats);
-            /*
-             * First passenger chooses any seat.
-             */
-            Collections.sort(passengers);
-            Collections.shuffle(seats);
-            put(seats.remove(0), passengers.remove(0));
-            /*
-             * Remaining passenger takes their assigned seat unless someone
-             * has already taken their's.
-             */
-            for (int p : passengers) {
-                int s = p;
-
-                if (! seats.remove((Object) s)) {
-                    s = seats.remove(0);
-                }
-
-                put(s, p);
-            }
+    @ToString
+    protected static class Tally implements Accumulator<Tally> {
+        private static final long serialVersionUID = 7961457013350914394L;
+
+        private final int passengers;
+        private final int seats;
+        private final int passengerN;
+        private final int seatN;
+        private final SparseHistogram occupants;
+
+        public Tally(int passengers, int seats) {
+            this.passengers = passengers;
+            this.seats = seats;
+            this.passengerN = passengers - 1;
+            this.seatN = passengerN;
+            this.occupants = new SparseHistogram();
         }
+
+        @Override
+        public void merge(Tally that) { occupants.merge(that.occupants); }
     }
 }
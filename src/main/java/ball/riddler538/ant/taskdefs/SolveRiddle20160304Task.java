@@ -22,11 +22,12 @@ import ball.swing.table.MapsTableModel;
 import ball.swing.table.SimpleTableModel;
 import ball.util.ant.taskdefs.AntTask;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 import org.apache.tools.ant.BuildException;
 
@@ -53,7 +54,16 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
  * which range should they choose to keep the first number, and within which
  * range should they reject it and try their luck with a second number?
  * </p>
- * Solution uses the Monte Carlo method.
+ * Solution uses the Monte Carlo method.  The game generalizes to any number
+ * of {@code players} with any number of {@code picks}: the player with the
+ * greatest pick wins.  The winners' first picks are
+ * counted in {@code buckets} buckets keyed by their upper bounds.  With
+ * {@code exact="true"}, the expected counts of {@code count} trials are
+ * calculated from the closed-form distributions instead.  The picks may be
+ * drawn by {@link Sampling#STRATIFIED STRATIFIED} or
+ * {@link Sampling#HALTON HALTON} {@code sampling} instead of independently
+ * and the table reports each bucket's standard error (estimated from the
+ * variation between chunks).
  *
  * {@ant.task}
  *
@@ -61,96 +71,514 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
  */
 @AntTask("solve-riddle-2016-03-04")
 @NoArgsConstructor @ToString
-public class SolveRiddle20160304Task extends AbstractSimulationTask {
+public class SolveRiddle20160304Task extends AbstractSimulationTask<SolveRiddle20160304Task.Tally> {
+    private static final int BATCH = 1 << 12;
+
+    @Getter @Setter
+    private int buckets = 101;
+    @Getter @Setter
+    private Sampling sampling = Sampling.RANDOM;
+    @Getter @Setter
+    private int players = 2;
+    @Getter @Setter
+    private int picks = 2;
+
     @Override
-    public void execute() throws BuildException {
-        super.execute();
+    protected Tally accumulator() {
+        validate();
 
-        try {
-            ArrayList<Simulation> simulations = new ArrayList<>(getCount());
+        return new Tally(getBuckets(), getPlayers(), getPicks());
+    }
 
-            for (int i = 0, n = getCount(); i < n; i += 1) {
-                simulations.add(new Simulation());
-            }
+    private void validate() {
+        if (getBuckets() < 2) {
+            throw new BuildException("`buckets' must be at least 2");
+        }
+
+        if (getPlayers() < 2) {
+            throw new BuildException("`players' must be at least 2");
+        }
+
+        if (getPicks() < 1) {
+            throw new BuildException("`picks' must be at least 1");
+        }
+    }
 
-            ArrayList<BucketMap> maps = new ArrayList<>();
+    @Override
+    protected double trial(Tally tally, Random random) {
+        double[] p = tally.buffer();
 
-            maps.add(new BucketMap());
-            maps.add(new BucketMap());
+        for (int i = 0, n = tally.players * tally.picks; i < n; i += 1) {
+            p[i] = random.nextDouble();
+        }
 
-            for (Simulation simulation : simulations) {
-                double[] winner = simulation.getWinnerPicks();
-                double key = maps.get(0).tailMap(winner[0]).firstKey();
+        return trial(tally, p, 0);
+    }
 
-                maps.get(0).put(key, maps.get(0).get(key) + 1);
+    /*
+     * Each trial draws exactly players * picks doubles so the picks of as
+     * many trials as fit in the Tally's buffer are drawn at once (in the
+     * same stream order as trial-by-trial) and then evaluated.
+     */
+    @Override
+    protected void trials(Tally tally, Random random, double[] values, int n) {
+        double[] p = tally.buffer();
+        int m = tally.players * tally.picks;
+        int batch = p.length / m;
 
-                double[] loser = simulation.getLoserPicks();
+        for (int i = 0; i < n; i += batch) {
+            int count = Math.min(batch, n - i);
 
-                if (winner[0] > max(loser)) {
-                    maps.get(1).put(key, maps.get(1).get(key) + 1);
-                }
+            for (int k = 0, end = count * m; k < end; k += 1) {
+                p[k] = random.nextDouble();
+            }
+
+            for (int j = 0; j < count; j += 1) {
+                values[i + j] = trial(tally, p, j * m);
+            }
+        }
+    }
+
+    /*
+     * The picks are laid out player by player starting at offset; the
+     * winner is the first player with the greatest maximum and wins on
+     * their first pick if it is greater than every other player's maximum.
+     */
+    private static double trial(Tally tally, double[] p, int offset) {
+        double[] maxima = tally.maxima();
+        int picks = tally.picks;
+        int winner = 0;
+
+        for (int i = 0, k = offset; i < maxima.length; i += 1) {
+            double max = p[k++];
+
+            for (int j = 1; j < picks; j += 1, k += 1) {
+                max = (p[k] > max) ? p[k] : max;
             }
 
-            log(new SimpleTableModel(new Object[][] { }, 3)
-                .row("count:", simulations.size(), EMPTY));
-            log();
+            maxima[i] = max;
+            winner = (max > maxima[winner]) ? i : winner;
+        }
+
+        double other = -1;
+
+        for (int i = 0; i < maxima.length; i += 1) {
+            other = (i != winner && maxima[i] > other) ? maxima[i] : other;
+        }
+
+        double x = p[offset + winner * picks];
+        int bucket = tally.bucket(x);
+        boolean first = x > other;
+
+        tally.wins.accept(bucket);
+
+        if (first) {
+            tally.first.accept(bucket);
+        }
+
+        return first ? 1 : 0;
+    }
+
+    @Override
+    protected Random random(long seed) {
+        Random random = super.random(seed);
+
+        switch (getSampling()) {
+        case STRATIFIED:
+            random = new LatinHypercube(random, CHUNK, getPlayers() * getPicks());
+            break;
+
+        case HALTON:
+            random = new Halton(random, getPlayers() * getPicks());
+            break;
+
+        default:
+            break;
+        }
+
+        return random;
+    }
+
+    @Override
+    protected void report(Tally tally) {
+        tally.close();
+
+        if (tally.replicates > 1) {
+            report(tally.wins.total(), asMap(tally.wins), asMap(tally.first),
+                   asMap(tally.error(tally.wins, tally.winsSquares, tally.winsProducts)),
+                   asMap(tally.error(tally.first, tally.firstSquares, tally.firstProducts)));
+        } else {
+            report(tally.wins.total(), asMap(tally.wins), asMap(tally.first), null, null);
+        }
+    }
+
+    /*
+     * With N players of K picks (m = NK), the maximum of the other
+     * players' picks has CDF y^(m-K).  Given its first pick x, a player
+     * wins with probability x^(K-1) * x^(m-K) (the other picks are less
+     * than x) plus the integral of (K-1) y^(K-2) y^(m-K) for y in [x, 1]
+     * (the greatest of its other picks is y > x and beats the others) =
+     * x^(m-1) + (K-1)/(m-1) (1 - x^(m-1)).  The winner's first pick
+     * therefore has density N times that and CDF
+     * N (x^m/m + (K-1)/(m-1) (x - x^m/m)) and the winner's first pick
+     * beats all of the other players' picks with density N x^(m-K) and CDF
+     * N x^(m-K+1)/(m-K+1).  (For N = K = 2, (2x + x^4)/3 and 2x^3/3.)
+     * Each bucket's expected count is count times the difference of the
+     * CDFs at its bounds.
+     */
+    @Override
+    protected void exact() {
+        validate();
+
+        TreeMap<Double,Number> wins = new TreeMap<>();
+        TreeMap<Double,Number> first = new TreeMap<>();
+        double count = getCount();
+        double lower = 0;
+
+        wins.put(lower, 0.0);
+        first.put(lower, 0.0);
+
+        for (int i = 1; i < getBuckets(); i += 1) {
+            double upper = ((double) i) / (getBuckets() - 1);
+
+            wins.put(upper, count * wins(lower, upper, getPlayers(), getPicks()));
+            first.put(upper, count * first(lower, upper, getPlayers(), getPicks()));
+
+            lower = upper;
+        }
+
+        report(getCount(), wins, first, null, null);
+    }
+
+    private static double wins(double l, double u, int n, int k) {
+        int m = n * k;
+        double power = power(l, u, m) / m;
+
+        return n * (power + (((double) (k - 1)) / (m - 1)) * ((u - l) - power));
+    }
+
+    private static double first(double l, double u, int n, int k) {
+        int m = n * k - k + 1;
+
+        return n * power(l, u, m) / m;
+    }
+
+    /*
+     * u^m - l^m computed as l^m (exp(m log(u/l)) - 1) to avoid
+     * cancellation in narrow buckets (falling back to the plain difference
+     * where l^m underflows or the exponential overflows).
+     */
+    private static double power(double l, double u, int m) {
+        double power = Math.pow(l, m);
+        double ratio = Math.expm1(m * Math.log1p((u - l) / l));
+
+        return (power > 0 && Double.isFinite(ratio)) ? power * ratio : Math.pow(u, m) - power;
+    }
+
+    private void report(Number count, Map<Double,Number> wins, Map<Double,Number> first,
+                        Map<Double,Number> winsError, Map<Double,Number> firstError) {
+        ArrayList<Map<Double,Number>> maps = new ArrayList<>();
+
+        maps.add(wins);
+        maps.add(first);
+
+        log(new SimpleTableModel(new Object[][] { }, 3)
+            .row("count:", count, EMPTY));
+        log();
+
+        if (winsError != null && firstError != null) {
+            maps.add(winsError);
+            maps.add(firstError);
+
+            log(new MapsTableModel(maps,
+                                   "first pick", "total wins",
+                                   "on first pick",
+                                   "total wins s.e.", "on first pick s.e."));
+        } else {
             log(new MapsTableModel(maps,
                                    "first pick", "total wins",
                                    "on first pick"));
-        } catch (BuildException exception) {
-            throw exception;
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
-            throw new BuildException(throwable);
         }
     }
 
-    private double max(double... array) { return array[greatest(array)]; }
+    /*
+     * Bucket i is keyed by its upper bound i / (buckets - 1).
+     */
+    private static Map<Double,Number> asMap(Histogram histogram) {
+        TreeMap<Double,Number> map = new TreeMap<>();
 
-    private int greatest(double... array) {
-        int greatest = 0;
+        for (int i = 0; i < histogram.size(); i += 1) {
+            map.put(((double) i) / (histogram.size() - 1), histogram.get(i));
+        }
 
-        for (int i = 1; i < array.length; i += 1) {
-            if (array[i] > array[greatest]) {
-                greatest = i;
-            }
+        return map;
+    }
+
+    private static Map<Double,Number> asMap(double[] array) {
+        TreeMap<Double,Number> map = new TreeMap<>();
+
+        for (int i = 0; i < array.length; i += 1) {
+            map.put(((double) i) / (array.length - 1), array[i]);
         }
 
-        return greatest;
+        return map;
     }
 
-    private static final Random RANDOM = new Random();
+    /**
+     * Sampling method.  {@link #STRATIFIED} and {@link #HALTON} draw each
+     * chunk's picks as one randomized design so every chunk is an
+     * independent replicate.
+     */
+    public enum Sampling {
+        /**
+         * Independent uniform picks.
+         */
+        RANDOM,
+        /**
+         * Latin hypercube: each pick dimension has exactly one point in
+         * each of the chunk's equal strata (jittered within the stratum).
+         */
+        STRATIFIED,
+        /**
+         * Halton sequence (prime bases 2, 3, 5, 7, ...) with a random shift modulo 1
+         * (Cranley-Patterson rotation).
+         */
+        HALTON;
+    }
 
+    /*
+     * Each chunk's Tally is one replicate: the per-bucket sums of the
+     * squared replicate counts c^2 and of c * n (n the replicate's trials)
+     * and the sum of n^2 are accumulated as Tallies are merged so the
+     * standard error of each bucket's count may be estimated from the
+     * variance between replicates with the ratio estimator (the chunks are
+     * not all the same size).  A single replicate (count <= CHUNK) has no
+     * between-replicate variance and the error columns are omitted.  The
+     * headline Estimate's interval assumes
+     * independent trials and is conservative for the randomized designs.
+     */
     @ToString
-    private class Simulation {
-        private final double[][] p;
+    protected static class Tally implements Accumulator<Tally> {
+        private static final long serialVersionUID = 3570981346154612340L;
+
+        private final int players;
+        private final int picks;
+        private final Histogram wins;
+        private final Histogram first;
+        @ToString.Exclude
+        private transient double[] buffer = null;
+        @ToString.Exclude
+        private transient double[] maxima = null;
+        private long[] winsSquares = null;
+        private long[] winsProducts = null;
+        private long[] firstSquares = null;
+        private long[] firstProducts = null;
+        private long sizes = 0;
+        private long replicates = 0;
+
+        public Tally(int buckets, int players, int picks) {
+            this.players = players;
+            this.picks = picks;
+            this.wins = new Histogram(buckets);
+            this.first = new Histogram(buckets);
+        }
+
+        private double[] buffer() {
+            if (buffer == null) {
+                buffer = new double[players * picks * Math.max(1, BATCH / (players * picks))];
+            }
+
+            return buffer;
+        }
+
+        private double[] maxima() {
+            if (maxima == null) {
+                maxima = new double[players];
+            }
+
+            return maxima;
+        }
 
-        public Simulation() {
-            p =
-                new double[][] {
-                    new double[] { RANDOM.nextDouble(), RANDOM.nextDouble() },
-                    new double[] { RANDOM.nextDouble(), RANDOM.nextDouble() }
-                };
+        private void close() {
+            if (replicates == 0) {
+                long n = wins.total();
+
+                winsSquares = new long[wins.size()];
+                winsProducts = new long[wins.size()];
+                firstSquares = new long[first.size()];
+                firstProducts = new long[first.size()];
+
+                for (int i = 0; i < wins.size(); i += 1) {
+                    winsSquares[i] = wins.get(i) * wins.get(i);
+                    winsProducts[i] = wins.get(i) * n;
+                    firstSquares[i] = first.get(i) * first.get(i);
+                    firstProducts[i] = first.get(i) * n;
+                }
+
+                sizes = n * n;
+                replicates = 1;
+            }
+        }
+
+        private double[] error(Histogram histogram, long[] squares, long[] products) {
+            double[] error = new double[histogram.size()];
+            double r = replicates;
+            double n = wins.total();
+
+            for (int i = 0; i < error.length; i += 1) {
+                double p = histogram.get(i) / n;
+                double sum = squares[i] - 2 * p * products[i] + p * p * sizes;
+
+                error[i] = Math.sqrt(Math.max(sum, 0) * r / (r - 1));
+            }
+
+            return error;
         }
 
-        public int getWinner() { return greatest(max(p[0]), max(p[1])); }
+        /*
+         * The least i such that x <= i / (buckets - 1).
+         */
+        private int bucket(double x) { return (int) Math.ceil(x * (wins.size() - 1)); }
 
-        public double[] getWinnerPicks() { return p[getWinner()]; }
+        @Override
+        public void merge(Tally that) {
+            close();
+            that.close();
 
-        public int getLoser() { return (getWinner() == 0) ? 1 : 0; }
+            wins.merge(that.wins);
+            first.merge(that.first);
 
-        public double[] getLoserPicks() { return p[getLoser()]; }
+            for (int i = 0; i < winsSquares.length; i += 1) {
+                winsSquares[i] += that.winsSquares[i];
+                winsProducts[i] += that.winsProducts[i];
+                firstSquares[i] += that.firstSquares[i];
+                firstProducts[i] += that.firstProducts[i];
+            }
+
+            sizes += that.sizes;
+            replicates += that.replicates;
+        }
     }
 
-    private class BucketMap extends TreeMap<Double,Integer> {
-        private static final long serialVersionUID = -5756858279184775705L;
+    /*
+     * Latin hypercube sample of n points: point k's coordinate in dimension
+     * d is (permutation[d][k] + U) / n.  The picks are drawn as successive
+     * nextDouble() calls so the trial kernel is unchanged.
+     */
+    private static class LatinHypercube extends Random {
+        private static final long serialVersionUID = -4187063302598530493L;
 
-        public BucketMap() {
-            super();
+        private final Random random;
+        private final int[][] permutation;
+        private int point = 0;
+        private int dimension = 0;
 
-            for (int i = 0; i <= 100; i += 1) {
-                put((double) i / 100, 0);
+        public LatinHypercube(Random random, int n, int dimensions) {
+            super(0);
+
+            this.random = random;
+            this.permutation = new int[dimensions][n];
+
+            for (int[] array : permutation) {
+                for (int i = 0; i < n; i += 1) {
+                    int j = random.nextInt(i + 1);
+
+                    array[i] = array[j];
+                    array[j] = i;
+                }
             }
         }
+
+        @Override
+        protected int next(int bits) { return random.nextInt() >>> (32 - bits); }
+
+        @Override
+        public double nextDouble() {
+            int[] array = permutation[dimension];
+            double value = (array[point % array.length] + random.nextDouble()) / array.length;
+
+            dimension += 1;
+
+            if (dimension == permutation.length) {
+                dimension = 0;
+                point += 1;
+            }
+
+            return value;
+        }
+    }
+
+    /*
+     * Randomly shifted Halton sequence (the first d primes are the bases).
+     */
+    private static class Halton extends Random {
+        private static final long serialVersionUID = -3010924744302281035L;
+
+        private final Random random;
+        private final int[] bases;
+        private final double[] shift;
+        private long point = 0;
+        private int dimension = 0;
+
+        public Halton(Random random, int dimensions) {
+            super(0);
+
+            this.random = random;
+            this.bases = new int[dimensions];
+            this.shift = new double[dimensions];
+
+            for (int i = 0, n = 2; i < bases.length; n += 1) {
+                boolean prime = true;
+
+                for (int j = 0; prime && j < i && bases[j] * bases[j] <= n; j += 1) {
+                    prime = (n % bases[j]) != 0;
+                }
+
+                if (prime) {
+                    bases[i++] = n;
+                }
+            }
+
+            for (int i = 0; i < shift.length; i += 1) {
+                shift[i] = random.nextDouble();
+            }
+        }
+
+        @Override
+        protected int next(int bits) { return random.nextInt() >>> (32 - bits); }
+
+        @Override
+        public double nextDouble() {
+            double value = inverse(point, bases[dimension]) + shift[dimension];
+
+            if (value >= 1) {
+                value -= 1;
+            }
+
+            dimension += 1;
+
+            if (dimension == shift.length) {
+                dimension = 0;
+                point += 1;
+            }
+
+            return value;
+        }
+
+        /*
+         * The radical inverse of n in base b.
+         */
+        private static double inverse(long n, int b) {
+            double value = 0;
+            double scale = 1.0 / b;
+
+            while (n > 0) {
+                value += (n % b) * scale;
+                n /= b;
+                scale /= b;
+            }
+
+            return value;
+        }
     }
 }
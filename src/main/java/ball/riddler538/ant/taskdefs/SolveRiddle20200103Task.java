@@ -21,17 +21,29 @@ package ball.riddler538.ant.taskdefs;
 import ball.swing.table.ArrayListTableModel;
 import ball.swing.table.SimpleTableModel;
 import ball.util.ant.taskdefs.AntTask;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 import org.apache.tools.ant.BuildException;
 
@@ -72,6 +84,26 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
  *
  * For consistency, please use this word list to check your game score.
  *
+ * The rules may be relaxed: with {@code pangram="false"} honeycombs without
+ * a pangram are considered and {@code exclude} specifies the excluded letters
+ * (default {@code S}).  Without the pangram rule, every 7-letter set is a
+ * candidate and the honeycombs are scored from a sum-over-subsets transform
+ * of the word scores.
+ * <p>
+ * The candidate honeycombs are scored on a {@link ForkJoinPool} of
+ * {@code threads} workers.  Each partition keeps its best score and its
+ * tied honeycombs and the partitions are merged in candidate order so the
+ * solutions (reported in honeycomb order) do not depend on {@code threads}.
+ * </p>
+ * <p>
+ * If {@code index} is specified, the word index is read from that
+ * {@link java.io.File} (or built and written to it if it does not exist or
+ * was built with other excluded letters).  If {@code queries} is specified,
+ * each line of that {@link java.io.File} is scored as a honeycomb (center
+ * letter first) instead of solving and the honeycomb, its score, and its
+ * words are written as a tab-separated line to {@code output}.
+ * </p>
+ *
  * {@ant.task}
  * <p>
  * The solution:
@@ -628,13 +660,77 @@ N   G INTENERATING  19
 @AntTask("solve-riddle-2020-01-03")
 @NoArgsConstructor @ToString
 public class SolveRiddle20200103Task extends AbstractTask {
-    private static final Character S = Character.valueOf('S');
+    private static final int ALPHABET = (1 << 26) - 1;
+    private static final int PARTITION = 1 << 10;
+
+    @Getter @Setter
+    private int threads = Runtime.getRuntime().availableProcessors();
+    @Getter @Setter
+    private boolean pangram = true;
+    @Getter @Setter
+    private String exclude = "S";
+    @Getter @Setter
+    private File index = null;
+    @Getter @Setter
+    private File queries = null;
+    @Getter @Setter
+    private File output = null;
 
     @Override
     public void execute() throws BuildException {
         super.execute();
 
         try {
+            if (getThreads() < 1) {
+                throw new BuildException("`threads' must be at least 1");
+            }
+
+            if (! getExclude().matches("[A-Za-z]*")) {
+                throw new BuildException("`exclude' must contain only letters");
+            }
+
+            int excluded = mask(getExclude().toUpperCase());
+
+            if (Integer.bitCount(ALPHABET & ~excluded) < 7) {
+                throw new BuildException("`exclude' must leave at least 7 letters");
+            }
+
+            if (getQueries() != null && getOutput() == null) {
+                throw new BuildException("`queries' requires `output'");
+            }
+
+            Index index = index(excluded);
+
+            if (getQueries() != null) {
+                query(index);
+            } else {
+                solve(index);
+            }
+        } catch (BuildException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            throw new BuildException(throwable);
+        }
+    }
+
+    /*
+     * Reads the Index from the `index' cache if it was built with the same
+     * excluded letters; builds (and caches) it from the word list
+     * otherwise.
+     */
+    private Index index(int excluded) throws Exception {
+        Index index = null;
+
+        if (getIndex() != null && getIndex().exists()) {
+            index = Index.read(getIndex());
+
+            if (index.excluded != excluded) {
+                index = null;
+            }
+        }
+
+        if (index == null) {
             URI uri = getClass().getResource("enable1.txt").toURI();
             List<String> list =
                 Files.lines(Paths.get(uri))
@@ -642,84 +738,128 @@ public class SolveRiddle20200103Task extends AbstractTask {
                 .filter(t -> isNotBlank(t))
                 .map(t -> t.toUpperCase())
                 .collect(toList());
-            Set<String> words =
-                list.stream()
-                .filter(t -> t.indexOf(S) == -1)
-                .filter(t -> score(t) > 0)
-                .filter(t -> toCharacterSet(t).size() <= 7)
-                .collect(toSet());
-            Set<Set<Character>> sets =
-                words.stream()
-                .map(t -> toCharacterSet(t))
-                .filter(t -> t.size() == 7)
-                .collect(toSet());
-            Map<Set<Character>,Set<String>> map =
-                new TreeMap<>(Comparator.comparing(Object::toString));
-
-            for (Set<Character> key : sets) {
-                Set<String> value =
-                    words.stream()
-                    .filter(t -> key.containsAll(toCharacterSet(t)))
-                    .collect(toSet());
-
-                map.put(key, value);
+
+            index = new Index(list, excluded);
+
+            if (getIndex() != null) {
+                index.write(getIndex());
             }
+        }
 
-            Map<List<Character>,Set<String>> solutions = new TreeMap<>(Comparator.comparing(Object::toString));
-            Map<List<Character>,Integer> scores = new TreeMap<>(Comparator.comparing(Object::toString));
+        return index;
+    }
 
-            for (Map.Entry<Set<Character>,Set<String>> entry : map.entrySet()) {
-                for (int i = 0, n = entry.getKey().size(); i < n; i += 1) {
-                    List<Character> key = entry.getKey().stream().collect(toList());
+    private void solve(Index index) {
+        int[] sets = null;
+        IntBinaryOperator scorer = null;
 
-                    key.add(0, key.remove(i));
+        if (isPangram()) {
+            sets =
+                Arrays.stream(index.masks)
+                .filter(t -> Integer.bitCount(t) == 7)
+                .toArray();
+            scorer = index::score;
+        } else {
+            Sums sums = new Sums(index, ALPHABET & ~index.excluded);
 
-                    Set<String> value =
-                        entry.getValue()
-                        .stream()
-                        .filter(t -> t.indexOf(key.get(0)) >= 0)
-                        .collect(toSet());
+            sets = sums.sets(7);
+            scorer = sums::score;
+        }
 
-                    solutions.put(key, value);
-                    scores.put(key, score(value));
-                }
-            }
+        ForkJoinPool pool = new ForkJoinPool(getThreads());
+        Best best = null;
+
+        try {
+            best = pool.invoke(new Search(sets, scorer, 0, sets.length));
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<List<Character>,Integer> solutions = new TreeMap<>(Comparator.comparing(Object::toString));
+
+        for (int i = 0; i < best.sets.size(); i += 1) {
+            solutions.put(toHoneycomb(best.sets.get(i), best.centers.get(i)), best.sets.get(i));
+        }
+
+        log(new SimpleTableModel(new Object[][] { }, 2)
+            .row("List:", index.size)
+            .row("Scoring Words:", index.words.length)
+            .row("Honeycomb Sets:", sets.length)
+            .row("Solutions:", 7 * sets.length));
+
+        for (Map.Entry<List<Character>,Integer> entry : solutions.entrySet()) {
+            log();
 
-            log(new SimpleTableModel(new Object[][] { }, 2)
-                .row("List:", list.size())
-                .row("Scoring Words:", words.size())
-                .row("Honeycomb Sets:", sets.size())
-                .row("Solutions:", solutions.size()));
+            List<Character> key = entry.getKey();
+            List<String> solution = index.words(entry.getValue(), mask(key.get(0)));
 
-            int maxScore =
-                scores.values()
-                .stream()
-                .mapToInt(Integer::intValue)
-                .max().getAsInt();
+            sort(solution);
 
-            for (List<Character> key : scores.keySet()) {
-                if (scores.get(key).intValue() == maxScore) {
-                    log();
+            log(new SolutionTableModel(key, solution));
+        }
+    }
+
+    /*
+     * Each query line is a honeycomb (center letter first) and each output
+     * line is the honeycomb, its score, and its words.
+     */
+    private void query(Index index) throws IOException {
+        long start = System.nanoTime();
+        int count = 0;
+        List<String> words = new ArrayList<>();
 
-                    List<String> solution = solutions.get(key).stream().collect(toList());
+        try (BufferedReader in = Files.newBufferedReader(getQueries().toPath());
+             PrintWriter out = new PrintWriter(Files.newBufferedWriter(getOutput().toPath()))) {
+            String line = null;
+
+            while ((line = in.readLine()) != null) {
+                String honeycomb = line.split("#", 2)[0].trim().toUpperCase();
+
+                if (honeycomb.isEmpty()) {
+                    continue;
+                }
 
-                    solution.sort(Comparator
-                                  .<String>comparingInt(t -> score(t))
-                                  .reversed()
-                                  .thenComparing(Comparator.naturalOrder()));
+                int set = honeycomb.matches("[A-Z]{7}") ? mask(honeycomb) : 0;
 
-                    log(new SolutionTableModel(key, solution));
+                if (Integer.bitCount(set) != 7 || (set & index.excluded) != 0) {
+                    throw new BuildException("Invalid honeycomb: " + line);
                 }
+
+                words.clear();
+
+                int score = index.words(set, mask(honeycomb.charAt(0)), words);
+
+                sort(words);
+
+                out.append(honeycomb)
+                    .append('\t').append(String.valueOf(score))
+                    .append('\t').append(String.join(" ", words))
+                    .println();
+
+                count += 1;
+            }
+
+            if (out.checkError()) {
+                throw new BuildException("Cannot write " + getOutput());
             }
-        } catch (BuildException exception) {
-            throw exception;
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
-            throw new BuildException(throwable);
         }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        log(new SimpleTableModel(new Object[][] { }, 2)
+            .row("Scoring Words:", index.words.length)
+            .row("Queries:", count)
+            .row("Queries/second:", String.format("%.0f", count / Math.max(seconds, 1e-9))));
+    }
+
+    private static void sort(List<String> list) {
+        list.sort(Comparator
+                  .<String>comparingInt(t -> score(t))
+                  .reversed()
+                  .thenComparing(Comparator.naturalOrder()));
     }
 
-    private int score(String string) {
+    private static int score(String string) {
         int score = 0;
 
         switch (string.length()) {
@@ -738,7 +878,7 @@ public class SolveRiddle20200103Task extends AbstractTask {
             score = string.length();
 
             if (string.length() >= 7) {
-                if (toCharacterSet(string).size() == 7) {
+                if (Integer.bitCount(mask(string)) == 7) {
                     score += 7;
                 }
             }
@@ -748,10 +888,46 @@ public class SolveRiddle20200103Task extends AbstractTask {
         return score;
     }
 
-    private int score(Collection<String> collection) {
+    private static int score(Collection<String> collection) {
         return collection.stream().mapToInt(t -> score(t)).sum();
     }
 
+    /*
+     * Letter sets are represented as 26-bit masks: bit (c - 'A') is set if
+     * the letter c is present.
+     */
+    private static int mask(char character) { return 1 << (character - 'A'); }
+
+    private static int mask(String string) {
+        int mask = 0;
+
+        for (int i = 0, n = string.length(); i < n; i += 1) {
+            mask |= mask(string.charAt(i));
+        }
+
+        return mask;
+    }
+
+    private static String toString(int mask) {
+        StringBuilder buffer = new StringBuilder();
+
+        for (int rest = mask; rest != 0; rest &= rest - 1) {
+            buffer.append((char) ('A' + Integer.numberOfTrailingZeros(rest)));
+        }
+
+        return buffer.toString();
+    }
+
+    private List<Character> toHoneycomb(int set, int center) {
+        List<Character> list = toCharacterSet(toString(set)).stream().collect(toList());
+        Character character = toString(center).charAt(0);
+
+        list.remove(character);
+        list.add(0, character);
+
+        return list;
+    }
+
     private List<Character> toCharacterList(String string) {
         return (string.chars()
                 .mapToObj(c -> Character.valueOf((char) c))
@@ -762,6 +938,355 @@ public class SolveRiddle20200103Task extends AbstractTask {
         return toCharacterList(string).stream().collect(toSet());
     }
 
+    /*
+     * Scores the candidates sets[from, to) splitting in halves down to
+     * PARTITION sets.
+     */
+    private static class Search extends RecursiveTask<Best> {
+        private static final long serialVersionUID = -1417925418398717465L;
+
+        private final int[] sets;
+        private final IntBinaryOperator scorer;
+        private final int from;
+        private final int to;
+
+        public Search(int[] sets, IntBinaryOperator scorer, int from, int to) {
+            super();
+
+            this.sets = sets;
+            this.scorer = scorer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Best compute() {
+            Best best = null;
+
+            if (to - from > PARTITION) {
+                int middle = (from + to) >>> 1;
+                Search right = new Search(sets, scorer, middle, to);
+
+                right.fork();
+
+                best = new Search(sets, scorer, from, middle).compute();
+                best.merge(right.join());
+            } else {
+                best = new Best();
+
+                for (int i = from; i < to; i += 1) {
+                    int set = sets[i];
+
+                    for (int rest = set; rest != 0; rest &= rest - 1) {
+                        int center = Integer.lowestOneBit(rest);
+
+                        best.accept(set, center, scorer.applyAsInt(set, center));
+                    }
+                }
+            }
+
+            return best;
+        }
+    }
+
+    /*
+     * The best score and the honeycombs (in candidate order) with that
+     * score.
+     */
+    @ToString
+    private static class Best {
+        private int score = 0;
+        private final List<Integer> sets = new ArrayList<>();
+        private final List<Integer> centers = new ArrayList<>();
+
+        public void accept(int set, int center, int score) {
+            if (score >= this.score) {
+                if (score > this.score) {
+                    this.score = score;
+                    sets.clear();
+                    centers.clear();
+                }
+
+                sets.add(set);
+                centers.add(center);
+            }
+        }
+
+        public void merge(Best that) {
+            if (that.score >= this.score) {
+                if (that.score > this.score) {
+                    this.score = that.score;
+                    sets.clear();
+                    centers.clear();
+                }
+
+                sets.addAll(that.sets);
+                centers.addAll(that.centers);
+            }
+        }
+    }
+
+    /**
+     * Sum-over-subsets (zeta) transform of the {@link Index} group scores:
+     * {@code sums[m]} is the total score of the words whose letters are a
+     * subset of {@code m} so a honeycomb scores
+     * {@code sums[set] - sums[set & ~center]}.  Masks are compressed to the
+     * allowed letters to halve the table for each excluded letter.
+     */
+    protected static class Sums {
+        private final int letters;
+        private final int[] sums;
+
+        /**
+         * Sole constructor.
+         *
+         * @param   index           The {@link Index}.
+         * @param   letters         The allowed letters mask.
+         */
+        public Sums(Index index, int letters) {
+            this.letters = letters;
+            this.sums = new int[1 << Integer.bitCount(letters)];
+
+            for (int i = 0; i < index.masks.length; i += 1) {
+                if ((index.masks[i] & ~letters) == 0) {
+                    sums[compress(index.masks[i])] += index.scores[i];
+                }
+            }
+
+            for (int bit = 1; bit < sums.length; bit <<= 1) {
+                for (int base = 0; base < sums.length; base += bit << 1) {
+                    for (int mask = base + bit, end = base + (bit << 1); mask < end; mask += 1) {
+                        sums[mask] += sums[mask - bit];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Method to get every letter set of the allowed letters.
+         *
+         * @param   size            The letter set size.
+         *
+         * @return  The letter-set masks.
+         */
+        public int[] sets(int size) {
+            IntStream.Builder builder = IntStream.builder();
+
+            for (int set = (1 << size) - 1; set < sums.length;) {
+                builder.add(expand(set));
+
+                int lowest = set & -set;
+                int ripple = set + lowest;
+
+                set = ripple | (((ripple ^ set) >>> 2) / lowest);
+            }
+
+            return builder.build().toArray();
+        }
+
+        /**
+         * Method to score a honeycomb.
+         *
+         * @param   set             The honeycomb letter-set mask.
+         * @param   center          The center letter mask.
+         *
+         * @return  The total score of the words spelled by the honeycomb.
+         */
+        public int score(int set, int center) {
+            return sums[compress(set)] - sums[compress(set & ~center)];
+        }
+
+        private int compress(int mask) {
+            int value = 0;
+
+            for (int rest = letters, bit = 1; rest != 0; rest &= rest - 1, bit <<= 1) {
+                if ((mask & rest & -rest) != 0) {
+                    value |= bit;
+                }
+            }
+
+            return value;
+        }
+
+        private int expand(int value) {
+            int mask = 0;
+
+            for (int rest = letters, bit = 1; rest != 0; rest &= rest - 1, bit <<= 1) {
+                if ((value & bit) != 0) {
+                    mask |= rest & -rest;
+                }
+            }
+
+            return mask;
+        }
+    }
+
+    /**
+     * Index of words grouped by letter-set mask with the total score of
+     * each group.  The groups are sorted by mask so a honeycomb is scored
+     * by looking up each of the 2^6 subsets of its outer letters combined
+     * with its center letter.
+     */
+    protected static class Index implements Serializable {
+        private static final long serialVersionUID = 4410396255934604416L;
+
+        private final int size;
+        private final int excluded;
+        private final int[] masks;
+        private final int[] scores;
+        private final int[] offsets;
+        private final String[] words;
+
+        /**
+         * Sole constructor.
+         *
+         * @param   list            The word list.
+         * @param   excluded        The excluded letters mask.
+         */
+        public Index(List<String> list, int excluded) {
+            this.size = list.size();
+            this.excluded = excluded;
+            this.words =
+                list.stream()
+                .filter(t -> (mask(t) & excluded) == 0)
+                .filter(t -> SolveRiddle20200103Task.score(t) > 0)
+                .filter(t -> Integer.bitCount(mask(t)) <= 7)
+                .distinct()
+                .sorted(Comparator.<String>comparingInt(t -> mask(t))
+                        .thenComparing(Comparator.naturalOrder()))
+                .toArray(String[]::new);
+
+            int[] masks = new int[words.length];
+            int[] scores = new int[words.length];
+            int[] offsets = new int[words.length + 1];
+            int n = 0;
+
+            for (int i = 0; i < words.length; i += 1) {
+                int mask = mask(words[i]);
+
+                if (n == 0 || masks[n - 1] != mask) {
+                    masks[n] = mask;
+                    offsets[n] = i;
+                    n += 1;
+                }
+
+                scores[n - 1] += SolveRiddle20200103Task.score(words[i]);
+            }
+
+            offsets[n] = words.length;
+
+            this.masks = Arrays.copyOf(masks, n);
+            this.scores = Arrays.copyOf(scores, n);
+            this.offsets = Arrays.copyOf(offsets, n + 1);
+        }
+
+        /**
+         * Method to score a honeycomb.
+         *
+         * @param   set             The honeycomb letter-set mask.
+         * @param   center          The center letter mask.
+         *
+         * @return  The total score of the words spelled by the honeycomb.
+         */
+        public int score(int set, int center) {
+            int score = 0;
+            int rest = set & ~center;
+
+            for (int subset = rest;; subset = (subset - 1) & rest) {
+                int i = Arrays.binarySearch(masks, subset | center);
+
+                if (i >= 0) {
+                    score += scores[i];
+                }
+
+                if (subset == 0) {
+                    break;
+                }
+            }
+
+            return score;
+        }
+
+        /**
+         * Method to get the words spelled by a honeycomb.
+         *
+         * @param   set             The honeycomb letter-set mask.
+         * @param   center          The center letter mask.
+         *
+         * @return  The {@link List} of words.
+         */
+        public List<String> words(int set, int center) {
+            List<String> list = new ArrayList<>();
+
+            words(set, center, list);
+
+            return list;
+        }
+
+        /**
+         * Method to get the words spelled by a honeycomb and their total
+         * score.
+         *
+         * @param   set             The honeycomb letter-set mask.
+         * @param   center          The center letter mask.
+         * @param   collection      The {@link Collection} to add the
+         *                          words to.
+         *
+         * @return  The total score of the words spelled by the honeycomb.
+         */
+        public int words(int set, int center, Collection<String> collection) {
+            int score = 0;
+            int rest = set & ~center;
+
+            for (int subset = rest;; subset = (subset - 1) & rest) {
+                int i = Arrays.binarySearch(masks, subset | center);
+
+                if (i >= 0) {
+                    score += scores[i];
+
+                    for (int j = offsets[i]; j < offsets[i + 1]; j += 1) {
+                        collection.add(words[j]);
+                    }
+                }
+
+                if (subset == 0) {
+                    break;
+                }
+            }
+
+            return score;
+        }
+
+        /**
+         * Method to write {@code this} {@link Index} (replacing any
+         * existing {@link File} atomically).
+         *
+         * @param   file        The {@link File}.
+         *
+         * @throws  IOException
+         *                      If the {@link Index} cannot be written.
+         */
+        public void write(File file) throws IOException {
+            Serialization.write(this, file);
+        }
+
+        /**
+         * Static method to read an {@link Index}.
+         *
+         * @param   file        The {@link File}.
+         *
+         * @return  The {@link Index}.
+         *
+         * @throws  IOException
+         *                      If the {@link Index} cannot be read.
+         * @throws  ClassNotFoundException
+         *                      If the {@link Index} cannot be read.
+         */
+        public static Index read(File file) throws IOException, ClassNotFoundException {
+            return Serialization.read(Index.class, file);
+        }
+    }
+
     private class SolutionTableModel extends ArrayListTableModel<String> {
         private static final long serialVersionUID = -5945141277843892156L;
 